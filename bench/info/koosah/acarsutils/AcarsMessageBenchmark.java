@@ -0,0 +1,65 @@
+package info.koosah.acarsutils;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import info.koosah.acarsutils.wxdecoder.Fixtures;
+
+/**
+ * Benchmarks for parsing raw frames, held as bytes or as Strings. Parsing
+ * is done only once per message, so each invocation parses a fresh one.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AcarsMessageBenchmark {
+    /* names of the WxDecoderTest fields holding the messages to parse */
+    @Param({ "asObs", "wnNonObs", "aaObs", "amObs1", "asAck" })
+    public String message;
+
+    private byte[] bytes;
+    private String string;
+    private final FlyweightAcarsMessage flyweight = new FlyweightAcarsMessage();
+
+    @Setup
+    public void setup() {
+        FakeAcarsMessage m = Fixtures.message(message);
+        bytes = Fixtures.frameBytes(m);
+        string = Fixtures.frame(m);
+        if (!new AcarsMessage(bytes).parse())
+            throw new IllegalStateException("Cannot parse " + message);
+    }
+
+    @Benchmark
+    public AcarsMessage parseBytes() {
+        AcarsMessage m = new AcarsMessage(bytes);
+        m.parse();
+        return m;
+    }
+
+    @Benchmark
+    public AcarsMessage parseString() {
+        AcarsMessage m = new AcarsMessage(string);
+        m.parse();
+        return m;
+    }
+
+    @Benchmark
+    public boolean parseFlyweight() {
+        return flyweight.wrap(bytes, 0, bytes.length);
+    }
+}
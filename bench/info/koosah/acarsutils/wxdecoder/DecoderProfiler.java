@@ -0,0 +1,273 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import info.koosah.acarsutils.AcarsMessage;
+import info.koosah.acarsutils.CaretReader;
+import info.koosah.acarsutils.IAcarsMessage;
+import info.koosah.acarsutils.TextFormat;
+
+/**
+ * Profiles each weather decoder over a corpus of messages, measuring
+ * throughput, bytes allocated per message and per-message latency, and
+ * writes the results as JSON. Given a thresholds file, it exits with a
+ * nonzero status if any decoder does worse than its thresholds, so that
+ * regressions fail the build.
+ *
+ * The corpus is synthetic (from TrafficGenerator) unless a log written
+ * in caret notation is given, in which case each decoder gets that log's
+ * messages for its airline, decoded against the base time given (by
+ * default, now). Thresholds are properties of the form
+ * CODE.maxBytesPerMessage, CODE.maxP99Nanos and CODE.minMessagesPerSecond,
+ * where CODE is an airline code or "default".
+ *
+ * Usage: DecoderProfiler [-n messages] [-c corpus.log [-b base-time]]
+ * [-o results.json] [-t thresholds.properties]
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class DecoderProfiler {
+    /* Passes over the corpus before measuring anything. */
+    private static final int WARMUP = 5;
+
+    /* Results for one decoder. */
+    private static final class Result {
+        String airline;
+        int messages;
+        long observations;
+        double messagesPerSecond, observationsPerSecond;
+        double bytesPerMessage;
+        long p50Nanos, p99Nanos;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean t = ManagementFactory.getThreadMXBean();
+        if (!(t instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean ret = (com.sun.management.ThreadMXBean) t;
+        if (!ret.isThreadAllocatedMemorySupported())
+            return null;
+        ret.setThreadAllocatedMemoryEnabled(true);
+        return ret;
+    }
+
+    private static long allocated() {
+        return THREADS == null ? -1L : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /* counts observations, and sums them so that nothing is optimized away */
+    private static final class Counter implements ObservationSink {
+        long count;
+        double sum;
+
+        public void observe(long observed, double latitude, double longitude,
+                int altitude, float temperature, int windDirection, int windSpeed) {
+            count++;
+            sum += latitude + longitude + altitude;
+        }
+    }
+
+    /* decode everything once, returning the number of observations */
+    private static long pass(WxDecoder decoder, IAcarsMessage[] corpus, long baseTime, Counter sink) {
+        long before = sink.count;
+        for (IAcarsMessage m : corpus)
+            decoder.decode(m, baseTime, sink);
+        return sink.count - before;
+    }
+
+    private static Result profile(String airline, IAcarsMessage[] corpus, long baseTime) throws Exception {
+        WxDecoder decoder = WxDecoder.sharedForName(airline);
+        Counter sink = new Counter();
+        for (int i=0; i<WARMUP; i++)
+            pass(decoder, corpus, baseTime, sink);
+
+        /* throughput and allocation, with nothing else going on */
+        Result r = new Result();
+        r.airline = airline;
+        r.messages = corpus.length;
+        long bytes = allocated();
+        long start = System.nanoTime();
+        r.observations = pass(decoder, corpus, baseTime, sink);
+        long elapsed = Math.max(1L, System.nanoTime() - start);
+        long after = allocated();
+        r.bytesPerMessage = bytes < 0 ? -1.0 : (double) (after - bytes) / corpus.length;
+        r.messagesPerSecond = corpus.length * 1e9 / elapsed;
+        r.observationsPerSecond = r.observations * 1e9 / elapsed;
+
+        /* latency, one message at a time */
+        long[] nanos = new long[corpus.length];
+        for (int i=0; i<corpus.length; i++) {
+            long t = System.nanoTime();
+            decoder.decode(corpus[i], baseTime, sink);
+            nanos[i] = System.nanoTime() - t;
+        }
+        Arrays.sort(nanos);
+        r.p50Nanos = nanos[(nanos.length - 1) / 2];
+        r.p99Nanos = nanos[(int) ((nanos.length - 1) * 0.99)];
+        return r;
+    }
+
+    /* synthetic traffic for one airline */
+    private static IAcarsMessage[] synthetic(String airline, int n) {
+        TrafficGenerator g = new TrafficGenerator(airline.hashCode()).setPoolSize(256);
+        for (String a : TrafficGenerator.AIRLINES)
+            g.setWeight(a, a.equals(airline) ? 1 : 0);
+        IAcarsMessage[] ret = new IAcarsMessage[n];
+        for (int i=0; i<n; i++)
+            ret[i] = g.next();
+        return ret;
+    }
+
+    /* messages from a log, by airline */
+    private static Map<String, IAcarsMessage[]> logged(String path) throws IOException {
+        Map<String, List<IAcarsMessage>> all = new LinkedHashMap<String, List<IAcarsMessage>>();
+        for (String a : TrafficGenerator.AIRLINES)
+            all.put(a, new ArrayList<IAcarsMessage>());
+        try (InputStream in = new FileInputStream(path); CaretReader r = new CaretReader(in)) {
+            AcarsMessage m;
+            while ((m = r.next()) != null) {
+                if (!m.parse() || m.getFlightId() == null || m.getFlightId().length() < 2)
+                    continue;
+                List<IAcarsMessage> l = all.get(m.getFlightId().substring(0, 2));
+                if (l != null)
+                    l.add(m);
+            }
+        }
+        Map<String, IAcarsMessage[]> ret = new LinkedHashMap<String, IAcarsMessage[]>();
+        for (Map.Entry<String, List<IAcarsMessage>> e : all.entrySet())
+            if (!e.getValue().isEmpty())
+                ret.put(e.getKey(), e.getValue().toArray(new IAcarsMessage[0]));
+        return ret;
+    }
+
+    private static String toJson(List<Result> results) {
+        StringBuilder sb = new StringBuilder("{\"allocationSupported\":")
+            .append(THREADS != null).append(",\"decoders\":[");
+        for (int i=0; i<results.size(); i++) {
+            Result r = results.get(i);
+            sb.append(i == 0 ? "\n" : ",\n").append("{\"decoder\":\"").append(r.airline)
+                .append("\",\"messages\":").append(r.messages)
+                .append(",\"observations\":").append(r.observations)
+                .append(",\"messagesPerSecond\":");
+            TextFormat.appendFixed(sb, r.messagesPerSecond, 1);
+            sb.append(",\"observationsPerSecond\":");
+            TextFormat.appendFixed(sb, r.observationsPerSecond, 1);
+            sb.append(",\"bytesPerMessage\":");
+            if (r.bytesPerMessage < 0.0)
+                sb.append("null");
+            else
+                TextFormat.appendFixed(sb, r.bytesPerMessage, 1);
+            sb.append(",\"p50Nanos\":").append(r.p50Nanos)
+                .append(",\"p99Nanos\":").append(r.p99Nanos).append('}');
+        }
+        return sb.append("\n]}\n").toString();
+    }
+
+    /* get a threshold for an airline, or its default, or NaN if none */
+    private static double threshold(Properties p, String airline, String name) {
+        String s = p.getProperty(airline + "." + name, p.getProperty("default." + name));
+        return s == null ? Double.NaN : Double.parseDouble(s.trim());
+    }
+
+    /* check results against thresholds, returning what failed */
+    private static List<String> check(List<Result> results, Properties p) {
+        List<String> failures = new ArrayList<String>();
+        for (Result r : results) {
+            double max = threshold(p, r.airline, "maxBytesPerMessage");
+            if (r.bytesPerMessage >= 0.0 && r.bytesPerMessage > max)
+                failures.add(r.airline + ": " + r.bytesPerMessage + " bytes/message > " + max);
+            max = threshold(p, r.airline, "maxP99Nanos");
+            if (r.p99Nanos > max)
+                failures.add(r.airline + ": p99 " + r.p99Nanos + " ns > " + max);
+            double min = threshold(p, r.airline, "minMessagesPerSecond");
+            if (r.messagesPerSecond < min)
+                failures.add(r.airline + ": " + r.messagesPerSecond + " messages/s < " + min);
+        }
+        return failures;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = 20000;
+        String corpus = null, output = null, thresholds = null;
+        long logTime = System.currentTimeMillis();
+        for (int i=0; i<args.length; i++) {
+            if (i + 1 == args.length)
+                usage();
+            switch (args[i]) {
+            case "-n":
+                n = Integer.parseInt(args[++i]);
+                break;
+            case "-c":
+                corpus = args[++i];
+                break;
+            case "-b":
+                logTime = java.time.Instant.parse(args[++i]).toEpochMilli();
+                break;
+            case "-o":
+                output = args[++i];
+                break;
+            case "-t":
+                thresholds = args[++i];
+                break;
+            default:
+                usage();
+            }
+        }
+
+        Map<String, IAcarsMessage[]> corpora;
+        if (corpus != null) {
+            corpora = logged(corpus);
+        } else {
+            corpora = new LinkedHashMap<String, IAcarsMessage[]>();
+            for (String a : TrafficGenerator.AIRLINES)
+                corpora.put(a, synthetic(a, n));
+        }
+
+        /* synthetic observations are made in the hour before the
+           generator's base time */
+        long baseTime = corpus == null ? new TrafficGenerator(0L).getBaseTime() : logTime;
+        List<Result> results = new ArrayList<Result>();
+        for (Map.Entry<String, IAcarsMessage[]> e : corpora.entrySet())
+            results.add(profile(e.getKey(), e.getValue(), baseTime));
+
+        String json = toJson(results);
+        if (output == null) {
+            System.out.print(json);
+        } else {
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.US_ASCII)) {
+                w.write(json);
+            }
+        }
+
+        if (thresholds != null) {
+            Properties p = new Properties();
+            try (InputStream in = new FileInputStream(thresholds)) {
+                p.load(in);
+            }
+            List<String> failures = check(results, p);
+            for (String f : failures)
+                System.err.println("Threshold exceeded: " + f);
+            if (!failures.isEmpty())
+                System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: DecoderProfiler [-n messages] [-c corpus.log [-b base-time]] [-o results.json] [-t thresholds.properties]");
+        System.exit(2);
+    }
+}
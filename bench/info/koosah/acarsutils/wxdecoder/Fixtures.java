@@ -0,0 +1,72 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import info.koosah.acarsutils.FakeAcarsMessage;
+
+/**
+ * Gives benchmarks access to the sample messages in WxDecoderTest, so
+ * that they are timed on the same traffic the tests check.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class Fixtures {
+    /* not intended to be instantiated */
+    private Fixtures() {}
+
+    private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+    private static final char STX = '\u0002';
+    private static final char ETX = '\u0003';
+
+    /**
+     * Base time for decoding the sample observations.
+     */
+    public static final long BASE_TIME = WxDecoderTest.OLD_YEAR.getTime();
+
+    /**
+     * Get a sample message by the name of its WxDecoderTest field.
+     * @param name        Field name, e.g. "asObs".
+     * @return            Message.
+     * @throws IllegalArgumentException If there is no such message.
+     */
+    public static FakeAcarsMessage message(String name) {
+        WxDecoderTest t = new WxDecoderTest();
+        t.getFreshVars();
+        try {
+            Field f = WxDecoderTest.class.getDeclaredField(name);
+            if (f.getType() != FakeAcarsMessage.class)
+                throw new IllegalArgumentException("Not a message: " + name);
+            return (FakeAcarsMessage) f.get(t);
+        } catch (NoSuchFieldException|IllegalAccessException e) {
+            throw new IllegalArgumentException("No such message: " + name, e);
+        }
+    }
+
+    /**
+     * Render a sample message as the raw frame it would have been
+     * received as (minus the SOH), for benchmarking parsing.
+     * @param m           Message.
+     * @return            Raw frame.
+     */
+    public static String frame(FakeAcarsMessage m) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(m.getMode()).append(m.getRegistration())
+            .append(m.getAcknowledge()).append(m.getLabel())
+            .append(m.getBlockId());
+        String text = m.getMessage();
+        if (text != null) {
+            sb.append(STX).append(m.getMessageId()).append(m.getFlightId())
+                .append(text);
+        }
+        return sb.append(ETX).toString();
+    }
+
+    /**
+     * Like frame, but as bytes.
+     * @param m           Message.
+     * @return            Raw frame.
+     */
+    public static byte[] frameBytes(FakeAcarsMessage m) {
+        return frame(m).getBytes(CHARSET);
+    }
+}
@@ -0,0 +1,94 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import info.koosah.acarsutils.FakeAcarsMessage;
+
+/**
+ * Benchmarks for getting decoders and for decoding. Each airline's
+ * decoder is run on its sample observation, non-observation and (where
+ * there is one) acknowledgement from WxDecoderTest; decoding reports to
+ * a sink that just sums what it is passed, so nothing is allocated on
+ * the benchmark's behalf.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WxDecoderBenchmark {
+    /**
+     * A sample message and the decoder for it.
+     */
+    @State(Scope.Thread)
+    public static class Sample {
+        /* names of the WxDecoderTest fields holding the messages to decode */
+        @Param({ "asObs", "asNonObs", "asAck", "wnObs", "wnNonObs", "wnAck",
+            "nwObs", "nwNonObs", "nwAck", "fxObsA", "fxObsB", "fxObsC", "fxNonObs",
+            "fxAck", "dlObs", "dlNonObs", "aaObs", "aaNonObs", "aaAck", "amObs1",
+            "amNonObs", "f9Obs", "f9NonObs", "f9Ack", "acObs", "acNonObs", "rvObs",
+            "rvNonObs" })
+        public String message;
+
+        FakeAcarsMessage msg;
+        WxDecoder decoder;
+        double sum;
+        final ObservationSink sink = new ObservationSink() {
+            public void observe(long observed, double latitude, double longitude,
+                    int altitude, float temperature, int windDirection, int windSpeed) {
+                sum += observed + latitude + longitude + altitude + windDirection + windSpeed;
+            }
+        };
+
+        @Setup
+        public void setup() throws Exception {
+            msg = Fixtures.message(message);
+            decoder = WxDecoder.sharedForName(msg.getFlightId());
+        }
+    }
+
+    @Benchmark
+    public double decode(Sample s) {
+        s.sum = 0.0;
+        return s.decoder.decode(s.msg, Fixtures.BASE_TIME, s.sink) ? s.sum : -1.0;
+    }
+
+    @Benchmark
+    public Iterable<?> decodeToList(Sample s) {
+        return s.decoder.decode(s.msg, WxDecoderTest.OLD_YEAR);
+    }
+
+    /* a hit: the shared decoder already exists */
+    @Benchmark
+    public WxDecoder sharedForName() throws Exception {
+        return WxDecoder.sharedForName("AS0066");
+    }
+
+    /* a miss: a fresh decoder gets made every time */
+    @Benchmark
+    public WxDecoder forName() throws Exception {
+        return WxDecoder.forName("AS0066");
+    }
+
+    /* a miss of the worst kind: no decoder at all */
+    @Benchmark
+    public Object forUnknownName() {
+        try {
+            return WxDecoder.forName("ZZ1234");
+        } catch (WxDecoder.UnknownAirlineException e) {
+            return e;
+        }
+    }
+}
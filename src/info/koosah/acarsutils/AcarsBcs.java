@@ -0,0 +1,90 @@
+package info.koosah.acarsutils;
+
+/**
+ * Computes and verifies the ACARS block check sequence (BCS), a CRC-16
+ * using the CCITT polynomial in bit-reversed form with an initial value
+ * of zero. It covers everything from the character after SOH through the
+ * ETX or ETB, and is transmitted least significant byte first, so running
+ * the CRC over a frame plus its BCS yields zero when all is well.
+ *
+ * The CRC is computed eight bytes at a time using the "slicing-by-8"
+ * technique; the tables are built once, when this class is loaded.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class AcarsBcs {
+    /* not intended to be instantiated */
+    private AcarsBcs() {}
+
+    /* CCITT polynomial, bit-reversed */
+    private static final int POLY = 0x8408;
+
+    /**
+     * Length of the BCS, in bytes.
+     */
+    public static final int LENGTH = 2;
+
+    /* T[k][b] is the CRC of byte b followed by k zero bytes */
+    private static final int[][] T = new int[8][256];
+    static {
+        for (int i=0; i<256; i++) {
+            int crc = i;
+            for (int j=0; j<8; j++)
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            T[0][i] = crc;
+        }
+        for (int k=1; k<8; k++) {
+            for (int i=0; i<256; i++) {
+                int prev = T[k-1][i];
+                T[k][i] = (prev >>> 8) ^ T[0][prev & 0xff];
+            }
+        }
+    }
+
+    /**
+     * Continue computing a CRC over more bytes.
+     * @param crc         CRC of the bytes so far (0 to start).
+     * @param b           Array containing the bytes.
+     * @param off         Offset of the first byte.
+     * @param len         Number of bytes.
+     * @return            Updated CRC.
+     */
+    public static int update(int crc, byte[] b, int off, int len) {
+        int[] t0 = T[0], t1 = T[1], t2 = T[2], t3 = T[3],
+              t4 = T[4], t5 = T[5], t6 = T[6], t7 = T[7];
+        int i = off, end = off + len;
+        for (int last = end - 8; i <= last; i += 8) {
+            crc ^= (b[i] & 0xff) | ((b[i+1] & 0xff) << 8);
+            crc = t7[crc & 0xff] ^ t6[crc >>> 8] ^
+                  t5[b[i+2] & 0xff] ^ t4[b[i+3] & 0xff] ^
+                  t3[b[i+4] & 0xff] ^ t2[b[i+5] & 0xff] ^
+                  t1[b[i+6] & 0xff] ^ t0[b[i+7] & 0xff];
+        }
+        for (; i < end; i++)
+            crc = (crc >>> 8) ^ t0[(crc ^ b[i]) & 0xff];
+        return crc;
+    }
+
+    /**
+     * Compute the CRC of some bytes.
+     * @param b           Array containing the bytes.
+     * @param off         Offset of the first byte.
+     * @param len         Number of bytes.
+     * @return            CRC.
+     */
+    public static int compute(byte[] b, int off, int len) {
+        return update(0, b, off, len);
+    }
+
+    /**
+     * Verify a frame and its BCS.
+     * @param b           Array containing the frame.
+     * @param off         Offset of the character after SOH.
+     * @param len         Length of the frame, including the two BCS bytes
+     *                    that follow the ETX or ETB.
+     * @return            True if the BCS matches.
+     */
+    public static boolean check(byte[] b, int off, int len) {
+        return len >= LENGTH && update(0, b, off, len) == 0;
+    }
+}
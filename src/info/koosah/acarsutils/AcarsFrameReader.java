@@ -0,0 +1,324 @@
+package info.koosah.acarsutils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Reads raw ACARS traffic from a stream and breaks it into frames. A frame
+ * starts after an SOH character and runs through the ETX (or, for all but
+ * the final block of a multi-block message, ETB) that ends it; this is
+ * exactly what AcarsMessage expects to be passed. Anything between frames
+ * (sync characters, trailing DELs) is skipped.
+ *
+ * By default the block check sequence following each frame is skipped
+ * too, but the reader can be told to verify it, and either flag or drop
+ * frames that fail the check. Dropped frames never get as far as being
+ * turned into messages, let alone parsed.
+ *
+ * The reader can also accept characters exactly as they come off the air,
+ * with odd parity in bit 7. Parity is then checked and stripped a word at
+ * a time; frames with parity errors are flagged, or dropped if the BCS
+ * policy is REJECT.
+ *
+ * Input is read in large chunks into a single buffer, which grows as
+ * needed and is reused for the life of the reader. The most recently read
+ * frame stays in that buffer until the next one is read, so it can be
+ * examined in place with a FlyweightAcarsMessage. This class is not
+ * thread-safe, and expects a blocking channel or stream.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public class AcarsFrameReader implements Closeable {
+    /* Framing characters. */
+    private static final byte SOH = 1;
+    private static final byte ETX = 3;
+    private static final byte ETB = 0x17;
+
+    /* Initial buffer size. */
+    private static final int INITIAL_SIZE = 8192;
+
+    /* No legitimate frame is anywhere near this long; if we go this long
+       without seeing a terminator, assume we lost it and resynchronize. */
+    private static final int MAX_FRAME = 4096;
+
+    /**
+     * What to do about the block check sequence.
+     */
+    public enum BcsPolicy {
+        /** Don't check it. */
+        IGNORE,
+        /** Check it, and flag frames that fail as having errors. */
+        FLAG,
+        /** Check it, and drop frames that fail. */
+        REJECT
+    };
+
+    private BcsPolicy bcsPolicy;
+    public BcsPolicy getBcsPolicy() {
+        return bcsPolicy;
+    }
+    public AcarsFrameReader setBcsPolicy(BcsPolicy value) {
+        if (value == null)
+            throw new IllegalArgumentException("Invalid BCS policy: null");
+        bcsPolicy = value;
+        return this;
+    }
+
+    /* channel number to give the messages we create */
+    private int channel;
+    public int getChannel() {
+        return channel;
+    }
+    public AcarsFrameReader setChannel(int value) {
+        channel = value;
+        return this;
+    }
+
+    /* whether input characters carry parity */
+    private boolean parity;
+    public boolean getParity() {
+        return parity;
+    }
+    public AcarsFrameReader setParity(boolean value) {
+        parity = value;
+        return this;
+    }
+
+    /* number of frames dropped due to bad block check sequences or parity */
+    private long rejected;
+    public long getRejected() {
+        return rejected;
+    }
+
+    private final ReadableByteChannel in;
+    private byte[] buf;
+    private ByteBuffer wrapper;
+
+    /* buf[pos..end) is data we have read but not yet examined */
+    private int pos, end;
+
+    /* Start of the frame being accumulated, or -1 if we are between
+       frames. */
+    private int frameStart;
+
+    /* End of a complete frame that is waiting for its BCS, or -1. */
+    private int frameEnd;
+
+    /* The frame most recently returned. */
+    private int frameOffset, frameLength;
+    private boolean bcsGood, parityGood;
+
+    private boolean eof;
+
+    /**
+     * Constructor (channel version).
+     * @param in          Channel of raw ACARS traffic.
+     */
+    public AcarsFrameReader(ReadableByteChannel in) {
+        this.in = in;
+        buf = new byte[INITIAL_SIZE];
+        wrapper = ByteBuffer.wrap(buf);
+        pos = end = 0;
+        frameStart = frameEnd = -1;
+        frameOffset = frameLength = 0;
+        bcsGood = parityGood = true;
+        eof = false;
+        bcsPolicy = BcsPolicy.IGNORE;
+        parity = false;
+        channel = 0;
+        rejected = 0;
+    }
+
+    /**
+     * Constructor (stream version).
+     * @param in          Stream of raw ACARS traffic.
+     */
+    public AcarsFrameReader(InputStream in) {
+        this(Channels.newChannel(in));
+    }
+
+    /**
+     * Advance to the next frame. Partial frames at the end of input are
+     * discarded.
+     * @return            True if a frame was read, false at end of input.
+     * @throws IOException On I/O errors.
+     */
+    public boolean nextFrame() throws IOException {
+        while (true) {
+            if (frameEnd < 0)
+                scan();
+            if (frameEnd >= 0) {
+                boolean done = true;
+                if (bcsPolicy == BcsPolicy.IGNORE) {
+                    bcsGood = true;
+                    pos = frameEnd;
+                } else if (end - frameEnd >= AcarsBcs.LENGTH) {
+                    /* the BCS covers the characters as sent, parity and all */
+                    bcsGood = AcarsBcs.check(buf, frameStart, frameEnd + AcarsBcs.LENGTH - frameStart);
+                    pos = frameEnd + AcarsBcs.LENGTH;
+                } else {
+                    done = false;
+                }
+                if (done) {
+                    parityGood = !parity ||
+                        AsciiBytes.stripParity(buf, frameStart, frameEnd - frameStart) < 0;
+                    if ((bcsGood && parityGood) || bcsPolicy != BcsPolicy.REJECT)
+                        return emit();
+                    rejected++;
+                    frameStart = frameEnd = -1;
+                    continue;
+                }
+            }
+
+            /* need more */
+            if (eof || !fill())
+                return false;
+        }
+    }
+
+    /* look for a complete frame in what we have */
+    private void scan() {
+        byte[] b = buf;
+        int mask = parity ? 0x7f : 0xff;
+        int i = pos, e = end;
+        while (i < e) {
+            int c = b[i++] & mask;
+            if (c == SOH) {
+                /* (re)start a frame; an SOH within a frame means we
+                   lost its terminator */
+                frameStart = i;
+            } else if (frameStart >= 0 && (c == ETX || c == ETB)) {
+                frameEnd = i;
+                break;
+            }
+        }
+        pos = i;
+        if (frameEnd < 0 && frameStart >= 0 && pos - frameStart > MAX_FRAME)
+            frameStart = -1;
+    }
+
+    private boolean emit() {
+        frameOffset = frameStart;
+        frameLength = frameEnd - frameStart;
+        frameStart = frameEnd = -1;
+        return true;
+    }
+
+    /* read more data, making room as needed */
+    private boolean fill() throws IOException {
+        /* we only need to keep a partially-read frame */
+        int keep = frameStart >= 0 ? frameStart : end;
+        int kept = end - keep;
+        if (keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, kept);
+            if (frameStart >= 0)
+                frameStart = 0;
+            if (frameEnd >= 0)
+                frameEnd -= keep;
+            pos -= keep;
+            end = kept;
+        }
+        if (end == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+            wrapper = ByteBuffer.wrap(buf);
+        }
+        wrapper.limit(buf.length).position(end);
+        int n;
+        do {
+            n = in.read(wrapper);
+        } while (n == 0);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        end += n;
+        return true;
+    }
+
+    /**
+     * Get the buffer containing the current frame. This buffer is owned by
+     * the reader and may be overwritten or replaced by the next read.
+     * @return            Byte array.
+     */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Get the offset of the current frame in the buffer.
+     * @return            Offset.
+     */
+    public int getFrameOffset() {
+        return frameOffset;
+    }
+
+    /**
+     * Get the length of the current frame, including its terminator.
+     * @return            Length.
+     */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * Whether the current frame passed its block check. Always true if
+     * the BCS policy is IGNORE.
+     * @return            Boolean.
+     */
+    public boolean isBcsGood() {
+        return bcsGood;
+    }
+
+    /**
+     * Whether the current frame had good parity. Always true if the
+     * reader is not expecting parity.
+     * @return            Boolean.
+     */
+    public boolean isParityGood() {
+        return parityGood;
+    }
+
+    /**
+     * Read the next frame, copying it into a new message. The message is
+     * not parsed. It is stamped with the current time and this reader's
+     * channel, and has an error count of 1 for each check (BCS, parity)
+     * that it failed.
+     * @return            Message, or null at end of input.
+     * @throws IOException On I/O errors.
+     */
+    public AcarsMessage next() throws IOException {
+        if (!nextFrame())
+            return null;
+        return new AcarsMessage(
+            Arrays.copyOfRange(buf, frameOffset, frameOffset + frameLength),
+            new Date(), channel, (bcsGood ? 0 : 1) + (parityGood ? 0 : 1));
+    }
+
+    /**
+     * Read the next frame, pointing a flyweight message at it in place.
+     * Whether the frame parsed can be determined with isValid().
+     * @param m           Message to point at the frame.
+     * @return            True if a frame was read, false at end of input.
+     * @throws IOException On I/O errors.
+     */
+    public boolean next(FlyweightAcarsMessage m) throws IOException {
+        if (!nextFrame())
+            return false;
+        m.wrap(buf, frameOffset, frameLength);
+        return true;
+    }
+
+    /**
+     * Close the underlying channel.
+     * @throws IOException On I/O errors.
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,324 @@
+package info.koosah.acarsutils;
+
+/**
+ * Explanations of ACARS message labels and H1 message sources. Both are
+ * (at most) two ASCII characters, so we pack them into a 14-bit code and
+ * use that to index dense arrays; no hashing or String keys are involved
+ * in a lookup. Codes also make cheap keys for callers' own tables.
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class AcarsLabels {
+    /* not intended to be instantiated */
+    private AcarsLabels() {}
+
+    /**
+     * The code for anything that cannot be encoded (null, the wrong
+     * length, or containing non-ASCII characters).
+     */
+    public static final int NONE = -1;
+
+    /* codes are two 7-bit characters */
+    private static final int BITS = 7;
+
+    /**
+     * Number of possible codes; all valid codes are less than this.
+     */
+    public static final int SIZE = 1 << (2 * BITS);
+
+    /* For returning explanations of unknown things */
+    private static final String UNKNOWN = "Unknown";
+
+    /* canonical strings and explanations, indexed by code */
+    private static final String[] LABELS = new String[SIZE];
+    private static final String[] LABEL_EXPLANATIONS = new String[SIZE];
+    private static final String[] SOURCES = new String[SIZE];
+    private static final String[] SOURCE_EXPLANATIONS = new String[SIZE];
+
+    private static void label(String name, String explanation) {
+        int c = code(name);
+        LABELS[c] = name;
+        LABEL_EXPLANATIONS[c] = explanation;
+    }
+
+    private static void source(String name, String explanation) {
+        int c = code(name);
+        SOURCES[c] = name;
+        SOURCE_EXPLANATIONS[c] = explanation;
+    }
+
+    /* ACARS message types */
+    private static final String GENERAL_LAB = "General response, demand mode; no information to transmit";
+    private static final String AIRLINE_LAB =  "Airline defined message";
+    static {
+        label("_", GENERAL_LAB);
+        label("_d", GENERAL_LAB);
+        label("_\u007f", GENERAL_LAB);
+        label("_j", "No info to transmit; polled mode");
+        label("00", "Emergency situation report");
+        label("2S", "Weather request");
+        label("2U", "Weather");
+        label("4M", "Cargo information");
+        label("51", "Ground GMT request/response");
+        label("52", "Ground UTC request/response");
+        label("54", "Aircrew initiated voice contact request");
+        label("57", "Alternate aircrew initiated position report");
+        label("5D", "ATIS request");
+        label("5P", "Temporary suspension of ACARS");
+        label("5R", "Aircraft initiated position report");
+        label("5U", "Weather request");
+        label("5Y", "Revision to previous ETA");
+        label("5Z", "Airline designated downlink");
+        label("7A", "Aircraft initiated engine data");
+        label("7B", "Aircraft initiated miscellaneous message");
+        label("80", "Aircraft addressed downlink 0");
+        label("81", "Aircraft addressed downlink 1");
+        label("82", "Aircraft addressed downlink 2");
+        label("83", "Aircraft addressed downlink 3");
+        label("84", "Aircraft addressed downlink 4");
+        label("85", "Aircraft addressed downlink 5");
+        label("86", "Aircraft addressed downlink 6");
+        label("87", "Aircraft addressed downlink 7");
+        label("88", "Aircraft addressed downlink 8");
+        label("89", "Aircraft addressed downlink 9");
+        label("8~", "Aircraft addressed downlink 10");
+        label("A1", "Deliver oceanic clearance");
+        label("A2", "Deliver departure clearance");
+        label("A4", "Acknowledge PDC");
+        label("A5", "Request position report");
+        label("A6", "Request ADS report");
+        label("A7", "Forward free text to aircraft");
+        label("A8", "Deliver departure slot");
+        label("A9", "Deliver ATIS information");
+        label("A0", "ATIS Facilities notification");
+        label("AA", "ATC Communications");
+        label("AB", "Terminal Weather Information for Pilots (TWIP)");
+        label("AC", "Pushback clearance");
+        label("AD", "Expected taxi clearance");
+        label("AE", "Unassigned");
+        label("AF", "CPC Command Response");
+        label("AG", "Unassigned");
+        label("B1", "Request oceanic clearance");
+        label("B2", "Request oceanic readback");
+        label("B3", "Request departure clearance");
+        label("B4", "Acknowledge departure clearance");
+        label("B5", "Provide position report");
+        label("B6", "Provide ADS report");
+        label("B7", "Forward free text to ATS");
+        label("B8", "Request departure slot");
+        label("B9", "Request ATIS information");
+        label("B0", "ATS Facility Notification (AFN)");
+        label("BA", "ATC communications");
+        label("BB", "Terminal Weather Information for Pilots (TWIP)");
+        label("BC", "Pushback clearance request");
+        label("BD", "Expected taxi clearance request");
+        label("BE", "CPC log-on/log-off request");
+        label("BF", "CPC WILCO/unassigned BLE response");
+        label("BG", "Unassigned");
+        label("C0", "Uplink message to all cockpit printers");
+        label("C1", "Uplink message to printer #1");
+        label("C2", "Uplink message to printer #2");
+        label("C3", "Uplink message to printer #3");
+        label("C4", "Uplink message to printer #4");
+        label("C5", "Uplink message to printer #5");
+        label("C6", "Uplink message to printer #6");
+        label("C7", "Uplink message to printer #7");
+        label("C8", "Uplink message to printer #8");
+        label("C9", "Uplink message to printer #9");
+        label("CA", "Printer status = error");
+        label("CB", "Printer status = busy");
+        label("CC", "Printer status = local");
+        label("CD", "Printer status = no paper");
+        label("CE", "Printer status = buffer overrun");
+        label("CF", "Printer status = reserved");
+        label("EI", "Internet e-mail message");
+        label("F3", "Dedicated transceiver advisory");
+        label("H1", "Message to/from terminal");
+        label("H2", "Meteorological report");
+        label("H3", "Icing report");
+        label("HX", "Undelivered uplink report");
+        label("M1", "IATA Departure message");
+        label("M2", "IATA Arrival message");
+        label("M3", "IATA Return to ramp message");
+        label("M4", "IATA Return from airborne message");
+        label("Q0", "ACARS link test");
+        label("Q1", "ETA Departure/arrival reports");
+        label("Q2", "ETA reports");
+        label("Q3", "Clock update");
+        label("Q4", "Voice circuit busy (response to 54)");
+        label("Q5", "Unable to process uplinked messages");
+        label("Q6", "Voice-to-ACARS change-over");
+        label("Q7", "Delay message");
+        label("QA", "Out/fuel report");
+        label("QB", "Off report");
+        label("QC", "On report");
+        label("QD", "In/fuel report");
+        label("QE", "Out/fuel destination report");
+        label("QF", "Off/destination report");
+        label("QG", "Out/return in report");
+        label("QH", "Out report");
+        label("QK", "Landing report");
+        label("QL", "Arrival report");
+        label("QM", "Arrival information report");
+        label("QN", "Diversion report");
+        label("QP", "OUT report");
+        label("QQ", "OFF report");
+        label("QR", "ON report");
+        label("QS", "IN report");
+        label("QT", "OUT/return IN report");
+        label("QX", "Intercept");
+        label("S1", "Network statistics request/response");
+        label("S2", "VHF performance report request");
+        label("S3", "LRU configuration request/response");
+        label("SA", "Media advisory");
+        label("SQ", "Squitter message");
+        label("X1", "Service provider defined DSP");
+        label("RA", "Command aircraft term. to transmit data");
+        label("RB", "Response of aircraft terminal to RA message");
+        label(":;", "Command aircraft xcvr to change frequency");
+        label("10", AIRLINE_LAB);
+        label("11", AIRLINE_LAB);
+        label("12", AIRLINE_LAB);
+        label("13", AIRLINE_LAB);
+        label("14", AIRLINE_LAB);
+        label("15", AIRLINE_LAB);
+        label("16", AIRLINE_LAB);
+        label("17", AIRLINE_LAB);
+        label("18", AIRLINE_LAB);
+        label("19", AIRLINE_LAB);
+        label("20", AIRLINE_LAB);
+        label("21", AIRLINE_LAB);
+        label("22", AIRLINE_LAB);
+        label("23", AIRLINE_LAB);
+        label("24", AIRLINE_LAB);
+        label("25", AIRLINE_LAB);
+        label("26", AIRLINE_LAB);
+        label("27", AIRLINE_LAB);
+        label("28", AIRLINE_LAB);
+        label("29", AIRLINE_LAB);
+        label("30", AIRLINE_LAB);
+        label("31", AIRLINE_LAB);
+        label("32", AIRLINE_LAB);
+        label("33", AIRLINE_LAB);
+        label("34", AIRLINE_LAB);
+        label("35", AIRLINE_LAB);
+        label("36", AIRLINE_LAB);
+        label("37", AIRLINE_LAB);
+        label("38", AIRLINE_LAB);
+        label("39", AIRLINE_LAB);
+        label("40", AIRLINE_LAB);
+        label("41", AIRLINE_LAB);
+        label("42", AIRLINE_LAB);
+        label("43", AIRLINE_LAB);
+        label("44", AIRLINE_LAB);
+        label("45", AIRLINE_LAB);
+        label("46", AIRLINE_LAB);
+        label("47", AIRLINE_LAB);
+        label("48", AIRLINE_LAB);
+        label("49", AIRLINE_LAB);
+        label("4~", AIRLINE_LAB);
+    }
+
+    /* ACARS H1 message subtypes */
+    private static final String AIRLINE_H1 = "Airline defined";
+    private static final String TERMINAL_H1 = "Cabin terminal";
+    static {
+        source("CF", "Central fault data indicator");
+        source("DF", "Flight data recorder");
+        source("EC", "Engine display system");
+        source("EI", "Engine report");
+        source("H1", "HF data radio #1");
+        source("H2", "HF data radio #2");
+        source("HD", "HF data radio");
+        source("M1", "Flight management computer #1");
+        source("M2", "Flight management computer #2");
+        source("M3", "Flight management computer #3");
+        source("MD", "Flight management computer");
+        source("PS", "Keyboard/display unit");
+        source("S1", "Satellite data unit #1");
+        source("S2", "Satellite data unit #2");
+        source("SD", "Satellite data unit");
+        source("T0", TERMINAL_H1);
+        source("T1", TERMINAL_H1);
+        source("T2", TERMINAL_H1);
+        source("T3", TERMINAL_H1);
+        source("T4", TERMINAL_H1);
+        source("T5", TERMINAL_H1);
+        source("T6", TERMINAL_H1);
+        source("T7", TERMINAL_H1);
+        source("T8", TERMINAL_H1);
+        source("WO", "Weather observation");
+    }
+
+    /**
+     * Encode one or two ASCII characters.
+     * @param c1          First character.
+     * @param c2          Second character, or 0 if there is none.
+     * @return            Code, or NONE.
+     */
+    public static int code(char c1, char c2) {
+        if ((c1 | c2) >= 128)
+            return NONE;
+        return (c1 << BITS) | c2;
+    }
+
+    /**
+     * Encode a label or source.
+     * @param s           One or two characters of ASCII.
+     * @return            Code, or NONE.
+     */
+    public static int code(CharSequence s) {
+        if (s == null)
+            return NONE;
+        switch (s.length()) {
+        case 1:
+            return code(s.charAt(0), '\0');
+        case 2:
+            return code(s.charAt(0), s.charAt(1));
+        default:
+            return NONE;
+        }
+    }
+
+    /**
+     * Get the shared String for a known label.
+     * @param code        Label code.
+     * @return            Canonical label string, or null if unknown.
+     */
+    public static String label(int code) {
+        return code < 0 ? null : LABELS[code];
+    }
+
+    /**
+     * Get the shared String for a known H1 message source.
+     * @param code        Source code.
+     * @return            Canonical source string, or null if unknown.
+     */
+    public static String source(int code) {
+        return code < 0 ? null : SOURCES[code];
+    }
+
+    /**
+     * Explain what a message label means.
+     * @param code        Label code.
+     * @return            Explanation, never null.
+     */
+    public static String explainLabel(int code) {
+        String ret = code < 0 ? null : LABEL_EXPLANATIONS[code];
+        return ret == null ? UNKNOWN : ret;
+    }
+
+    /**
+     * Explain what an H1 message source means.
+     * @param code        Source code.
+     * @return            Explanation, never null.
+     */
+    public static String explainSource(int code) {
+        if (code < 0)
+            return UNKNOWN;
+        char ch1 = (char) (code >> BITS);
+        if (ch1 >= '0' && ch1 <= '9')
+            return AIRLINE_H1;
+        String ret = SOURCE_EXPLANATIONS[code];
+        return ret == null ? UNKNOWN : ret;
+    }
+}
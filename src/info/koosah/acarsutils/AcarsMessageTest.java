@@ -0,0 +1,542 @@
+package info.koosah.acarsutils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests for the various ways of breaking a raw ACARS message into fields.
+ */
+public class AcarsMessageTest {
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    /* raw messages, as they come off the air minus the SOH */
+    private static final String OBS =
+        "2.N794AS\u0015H16\u0002D38BAS0066#DFB.2.224.059.CR#\r\n" +
+        "N48.8162.W123.5620.312343.#35004.-50.5.227.055.CR#\u0003";
+    private static final String ACK = "2.N627AS\u0015_\u007f7\u0003";
+    private static final String UPLINK = "2.N794ASAQ0A\u0002\u0003";
+    private static final String RUNT = "2.N794AS\u0015H1";
+
+    /* all fields should match between two messages */
+    private void assertSameFields(IAcarsMessage expected, IAcarsMessage actual) {
+        assertEquals(expected.getMode(), actual.getMode());
+        assertEquals(expected.getRegistration(), actual.getRegistration());
+        assertEquals(expected.getAcknowledge(), actual.getAcknowledge());
+        assertEquals(expected.getLabel(), actual.getLabel());
+        assertEquals(expected.getBlockId(), actual.getBlockId());
+        assertEquals(expected.getMessageId(), actual.getMessageId());
+        assertEquals(expected.getFlightId(), actual.getFlightId());
+        assertEquals(expected.getSource(), actual.getSource());
+        assertEquals(expected.getMessage(), actual.getMessage());
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(CHARSET);
+    }
+
+    @Test
+    public void parsesObservation() {
+        AcarsMessage m = new AcarsMessage(bytes(OBS));
+        assertTrue(m.parse());
+        assertEquals('2', m.getMode());
+        assertEquals(".N794AS", m.getRegistration());
+        assertEquals("H1", m.getLabel());
+        assertEquals('6', m.getBlockId());
+        assertEquals("D38B", m.getMessageId());
+        assertEquals("AS0066", m.getFlightId());
+        assertEquals("DF", m.getSource());
+        assertTrue(m.getMessage().startsWith("#DFB.2.224"));
+        assertTrue(m.getMessage().endsWith(".CR#"));
+    }
+
+    @Test
+    public void stringAndBytesAgree() {
+        for (String raw : new String[] { OBS, ACK, UPLINK }) {
+            AcarsMessage b = new AcarsMessage(bytes(raw));
+            AcarsMessage s = new AcarsMessage(raw);
+            assertTrue(b.parse());
+            assertTrue(s.parse());
+            assertSameFields(s, b);
+        }
+    }
+
+    @Test
+    public void rejectsBadMessages() {
+        assertFalse(new AcarsMessage(RUNT).parse());
+        byte[] raw = bytes(OBS);
+        raw[20] = (byte) 0xc1;
+        AcarsMessage m = new AcarsMessage(raw);
+        assertFalse(m.parse());
+        try {
+            m.getRegistration();
+            fail("Got a field from an unparseable message.");
+        } catch (IllegalStateException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void parsedIsImmutableResult() {
+        AcarsMessage m = new AcarsMessage(bytes(OBS));
+        assertNull(m.getParsed());
+        assertNull(m.getString());
+        assertTrue(m.parse());
+        ParsedAcarsMessage p = m.getParsed();
+        assertNotNull(p);
+        assertSameFields(p, m);
+        assertEquals(OBS, m.getString());
+        assertTrue(m.parse());
+        assertSame(p, m.getParsed());
+        assertSameFields(p, ParsedAcarsMessage.parse(OBS));
+        assertNull(ParsedAcarsMessage.parse(RUNT));
+
+        AcarsMessage bad = new AcarsMessage(RUNT);
+        assertFalse(bad.parse());
+        assertFalse(bad.parse());
+        assertNull(bad.getParsed());
+    }
+
+    @Test
+    public void explainsLabels() {
+        AcarsMessage m = new AcarsMessage(OBS);
+        assertTrue(m.parse());
+        assertEquals("Message to/from terminal", m.getLabelExplanation());
+        assertEquals("Flight data recorder", m.getSourceExplanation());
+        assertEquals(AcarsLabels.code("H1"), m.getLabelCode());
+        assertSame(AcarsLabels.label(m.getLabelCode()), m.getLabel());
+
+        AcarsMessage a = new AcarsMessage(ACK);
+        assertTrue(a.parse());
+        assertEquals("General response, demand mode; no information to transmit",
+            a.getLabelExplanation());
+        assertEquals(AcarsLabels.NONE, a.getSourceCode());
+
+        assertEquals("Airline defined", AcarsLabels.explainSource(AcarsLabels.code("42")));
+        assertEquals("Unknown", AcarsLabels.explainLabel(AcarsLabels.code("ZZ")));
+        assertEquals("Unknown", AcarsLabels.explainLabel(AcarsLabels.code("H1H")));
+        assertEquals(AcarsLabels.NONE, AcarsLabels.code("\u00e9A"));
+    }
+
+    @Test
+    public void flyweightAgrees() {
+        FlyweightAcarsMessage f = new FlyweightAcarsMessage();
+        for (String raw : new String[] { OBS, ACK, UPLINK }) {
+            AcarsMessage m = new AcarsMessage(raw);
+            assertTrue(m.parse());
+            assertTrue(f.wrap(bytes(raw)));
+            assertSameFields(m, f);
+            assertEquals(m.getLabelCode(), f.getLabelCode());
+            assertEquals(m.getSourceCode(), f.getSourceCode());
+        }
+        assertFalse(f.wrap(bytes(RUNT)));
+    }
+
+    @Test
+    public void flyweightViews() {
+        byte[] raw = bytes(OBS);
+        byte[] padded = new byte[raw.length + 10];
+        System.arraycopy(raw, 0, padded, 5, raw.length);
+        FlyweightAcarsMessage f = new FlyweightAcarsMessage();
+        assertTrue(f.wrap(padded, 5, raw.length));
+        assertEquals("H1", f.getLabelChars().toString());
+        assertEquals("DF", f.getSourceChars().toString());
+        assertEquals(f.getMessage(), f.getMessageChars().toString());
+        assertEquals('#', f.getMessageChars().charAt(0));
+        assertEquals('#', (char) padded[f.getMessageOffset()]);
+
+        /* direct buffers get copied, but must parse the same */
+        ByteBuffer direct = ByteBuffer.allocateDirect(raw.length);
+        direct.put(raw).flip();
+        FlyweightAcarsMessage g = new FlyweightAcarsMessage();
+        assertTrue(g.wrap(direct));
+        assertSameFields(f, g);
+        assertEquals(0, direct.position());
+    }
+
+    /* a stream that dribbles out a few bytes at a time */
+    private static class SlowStream extends ByteArrayInputStream {
+        public SlowStream(byte[] b) {
+            super(b);
+        }
+        public int read(byte[] b, int off, int len) {
+            return super.read(b, off, Integer.min(len, 3));
+        }
+    }
+
+    private static byte[] traffic(String... frames) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] noise = bytes("+*\u0016\u0016");
+        for (String f : frames) {
+            out.write(noise, 0, noise.length);
+            out.write(1);
+            byte[] b = bytes(f);
+            out.write(b, 0, b.length);
+            int bcs = AcarsBcs.compute(b, 0, b.length);
+            out.write(bcs & 0xff);
+            out.write(bcs >> 8);
+            out.write(0x7f);
+        }
+        return out.toByteArray();
+    }
+
+    /* the simplest possible (bit at a time) CRC, to check against */
+    private static int slowCrc(byte[] b, int off, int len) {
+        int crc = 0;
+        for (int i=off; i<off+len; i++) {
+            crc ^= b[i] & 0xff;
+            for (int j=0; j<8; j++)
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x8408 : crc >>> 1;
+        }
+        return crc;
+    }
+
+    @Test
+    public void computesBcs() {
+        Random r = new Random(1);
+        byte[] b = new byte[300];
+        r.nextBytes(b);
+        for (int off=0; off<9; off++) {
+            for (int len=0; len<b.length-off; len+=7)
+                assertEquals(slowCrc(b, off, len), AcarsBcs.compute(b, off, len));
+        }
+
+        byte[] f = bytes(OBS + "\0\0");
+        int bcs = AcarsBcs.compute(f, 0, f.length - 2);
+        f[f.length - 2] = (byte) bcs;
+        f[f.length - 1] = (byte) (bcs >> 8);
+        assertTrue(AcarsBcs.check(f, 0, f.length));
+        f[20] ^= 4;
+        assertFalse(AcarsBcs.check(f, 0, f.length));
+    }
+
+    @Test
+    public void checksBcs() throws IOException {
+        byte[] raw = traffic(OBS, ACK, UPLINK);
+        raw[raw.length - 10] ^= 1;  /* corrupt UPLINK */
+
+        AcarsFrameReader r = new AcarsFrameReader(new SlowStream(raw))
+            .setBcsPolicy(AcarsFrameReader.BcsPolicy.FLAG).setChannel(2);
+        for (int i=0; i<3; i++) {
+            AcarsMessage m = r.next();
+            assertEquals(i < 2 ? 0 : 1, m.getErrors());
+            assertEquals(2, m.getChannel());
+            assertNotNull(m.getTime());
+        }
+        assertNull(r.next());
+
+        r = new AcarsFrameReader(new SlowStream(raw))
+            .setBcsPolicy(AcarsFrameReader.BcsPolicy.REJECT);
+        assertNotNull(r.next());
+        assertNotNull(r.next());
+        assertNull(r.next());
+        assertEquals(1, r.getRejected());
+    }
+
+    @Test
+    public void readsFrames() throws IOException {
+        byte[] raw = traffic(OBS, ACK, UPLINK);
+        for (InputStream in : new InputStream[] { new ByteArrayInputStream(raw), new SlowStream(raw) }) {
+            AcarsFrameReader r = new AcarsFrameReader(in);
+            for (String expected : new String[] { OBS, ACK, UPLINK }) {
+                AcarsMessage m = r.next();
+                assertNotNull(m);
+                assertTrue(m.parse());
+                assertSameFields(ParsedAcarsMessage.parse(expected), m);
+            }
+            assertNull(r.next());
+        }
+
+        /* flyweights are pointed into the reader's buffer */
+        AcarsFrameReader r = new AcarsFrameReader(new SlowStream(raw));
+        FlyweightAcarsMessage f = new FlyweightAcarsMessage();
+        assertTrue(r.next(f));
+        assertTrue(f.isValid());
+        assertSame(r.getBuffer(), f.getBuffer());
+        assertEquals("D38B", f.getMessageId());
+        assertTrue(r.next(f));
+        assertTrue(r.next(f));
+        assertFalse(r.next(f));
+    }
+
+    /* add odd parity to 7-bit characters */
+    private static byte[] withParity(byte[] b) {
+        byte[] ret = new byte[b.length];
+        for (int i=0; i<b.length; i++)
+            ret[i] = (byte) ((Integer.bitCount(b[i]) & 1) == 0 ? b[i] | 0x80 : b[i]);
+        return ret;
+    }
+
+    @Test
+    public void checksAsciiAndParity() {
+        byte[] plain = bytes(OBS);
+        byte[] onAir = withParity(plain);
+        assertEquals(-1, AsciiBytes.firstNonAscii(plain, 0, plain.length));
+        assertEquals(-1, AsciiBytes.firstBadParity(onAir, 0, onAir.length));
+        for (int bad=0; bad<plain.length; bad+=5) {
+            for (int off=0; off<3 && off<=bad; off++) {
+                byte[] p = plain.clone();
+                p[bad] |= 0x80;
+                assertEquals(bad, AsciiBytes.firstNonAscii(p, off, p.length - off));
+                byte[] q = onAir.clone();
+                q[bad] ^= 0x80;
+                assertEquals(bad, AsciiBytes.firstBadParity(q, off, q.length - off));
+                assertEquals(bad, AsciiBytes.stripParity(q, off, q.length - off));
+                q[bad] = p[bad] = plain[bad];
+                assertArrayEquals(Arrays.copyOfRange(p, off, p.length),
+                    Arrays.copyOfRange(q, off, q.length));
+            }
+        }
+        byte[] q = onAir.clone();
+        assertEquals(-1, AsciiBytes.stripParity(q, 0, q.length));
+        assertArrayEquals(plain, q);
+    }
+
+    @Test
+    public void readsParity() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String f : new String[] { OBS, ACK, UPLINK }) {
+            byte[] b = withParity(bytes(f));
+            out.write(1);
+            out.write(b, 0, b.length);
+            int bcs = AcarsBcs.compute(b, 0, b.length);
+            out.write(bcs & 0xff);
+            out.write(bcs >> 8);
+        }
+        byte[] traffic = out.toByteArray();
+        traffic[traffic.length - 6] ^= 0x80;  /* parity error in UPLINK */
+
+        AcarsFrameReader r = new AcarsFrameReader(new SlowStream(traffic))
+            .setParity(true).setBcsPolicy(AcarsFrameReader.BcsPolicy.FLAG);
+        for (String expected : new String[] { OBS, ACK }) {
+            AcarsMessage m = r.next();
+            assertEquals(0, m.getErrors());
+            assertTrue(m.parse());
+            assertSameFields(ParsedAcarsMessage.parse(expected), m);
+        }
+        AcarsMessage m = r.next();
+        assertEquals(2, m.getErrors());
+        assertFalse(r.isParityGood());
+        assertTrue(m.parse());
+        assertNull(r.next());
+    }
+
+    @Test
+    public void reassemblesBlocks() {
+        String b1 = "2.N674FE\u0015H19\u0002D53AFX1351#DFBR12/N674FE27JUN010735135143109-120491612\r\n" +
+            "/235717N4738W1223003374+1342850050\r\n/2357\u0017";
+        String b2 = "2.N674FE\u0015H10\u0002D53BFX135123N4738W1223003880+1313440080\u0003";
+        AcarsMessage m1 = new AcarsMessage(b1), m2 = new AcarsMessage(b2);
+        assertTrue(m1.parse());
+        assertTrue(m2.parse());
+        assertFalse(m1.isFinalBlock());
+        assertTrue(m2.isFinalBlock());
+
+        /* blocks get put together */
+        MessageReassembler r = new MessageReassembler(10, 60000L);
+        assertNull(r.add(m1, 1000L));
+        assertEquals(1, r.getPending());
+        IAcarsMessage whole = r.add(m2, 2000L);
+        assertNotNull(whole);
+        assertEquals(0, r.getPending());
+        assertEquals("DF", whole.getSource());
+        assertEquals("D53A", whole.getMessageId());
+        assertEquals(m1.getMessage() + m2.getMessage(), whole.getMessage());
+        assertTrue(whole.getMessage().contains("/235723N4738W1223003880+1313440080"));
+        assertNull(r.add(m1, 3000L));
+        assertNull(r.add(m1, 3500L));  /* duplicate */
+        IAcarsMessage again = r.add(m2, 4000L);
+        assertEquals(whole.getMessage(), again.getMessage());
+
+        /* single blocks pass straight through */
+        AcarsMessage single = new AcarsMessage(OBS);
+        assertTrue(single.parse());
+        assertSame(single, r.add(single, 5000L));
+
+        /* stale partial messages get evicted */
+        assertNull(r.add(m1, 6000L));
+        assertTrue(r.expire(7000L).isEmpty());
+        List<IAcarsMessage> stale = r.expire(66000L);
+        assertEquals(1, stale.size());
+        assertEquals(m1.getMessage(), stale.get(0).getMessage());
+        assertEquals(1, r.getEvicted());
+
+        /* as do the oldest, when full */
+        MessageReassembler small = new MessageReassembler(1, 60000L, 1);
+        assertNull(small.add(m1, 1000L));
+        AcarsMessage other = new AcarsMessage(b1.replace("D53A", "D54A"));
+        assertTrue(other.parse());
+        assertNull(small.add(other, 1001L));
+        assertEquals(1, small.getEvicted());
+        assertSame(m2, small.add(m2, 1002L));
+    }
+
+    @Test
+    public void suppressesDuplicates() {
+        AcarsMessage first = new AcarsMessage(bytes(OBS), null, 1, 1);
+        AcarsMessage copy = new AcarsMessage(bytes(OBS), null, 2, 1);
+        AcarsMessage better = new AcarsMessage(bytes(OBS), null, 3, 0);
+        AcarsMessage other = new AcarsMessage(OBS.replace("D38B", "D39B"));
+        for (AcarsMessage m : new AcarsMessage[] { first, copy, better, other })
+            assertTrue(m.parse());
+        assertEquals(DuplicateFilter.hash(first), DuplicateFilter.hash(copy));
+        assertNotEquals(DuplicateFilter.hash(first), DuplicateFilter.hash(other));
+
+        /* first copy passes, worse or equal ones don't, better ones do */
+        DuplicateFilter f = new DuplicateFilter(4, 60000L);
+        assertTrue(f.accept(first, 1000L));
+        assertFalse(f.accept(copy, 1001L));
+        assertTrue(f.accept(better, 1002L));
+        assertFalse(f.accept(better, 1003L));
+        assertTrue(f.accept(other, 1004L));
+        assertEquals(2, f.getSuppressed());
+
+        /* still remembered one window later, forgotten after two */
+        AcarsMessage third = new AcarsMessage(OBS.replace("D38B", "D40B"));
+        AcarsMessage fourth = new AcarsMessage(OBS.replace("D38B", "D41B"));
+        assertTrue(third.parse());
+        assertTrue(fourth.parse());
+        assertTrue(f.accept(third, 61005L));
+        assertFalse(f.accept(first, 61006L));
+        assertTrue(f.accept(fourth, 121005L));
+        assertFalse(f.accept(third, 121006L));
+        assertTrue(f.accept(first, 121007L));
+
+        /* flyweights hash the same as ordinary messages */
+        FlyweightAcarsMessage fw = new FlyweightAcarsMessage();
+        fw.wrap(bytes(OBS));
+        assertEquals(DuplicateFilter.hash(first), DuplicateFilter.hash(fw));
+        AcarsMessage ack = new AcarsMessage(ACK);
+        assertTrue(ack.parse());
+        fw.wrap(bytes(ACK));
+        assertEquals(DuplicateFilter.hash(ack), DuplicateFilter.hash(fw));
+
+        /* capacity is bounded */
+        DuplicateFilter small = new DuplicateFilter(1, 60000L);
+        assertTrue(small.accept(first, 0, 0L));
+        assertTrue(small.accept(other, 0, 1L));
+        assertFalse(small.accept(first, 0, 2L));
+        assertTrue(small.accept(third, 0, 3L));
+        assertTrue(small.accept(first, 0, 4L));
+    }
+
+    @Test
+    public void writesCaretNotation() throws IOException {
+        Random r = new Random(42);
+        String alphabet = "AB\t\r\n\u0002\u0003\u007f\u00e9 ";
+        for (int i=0; i<500; i++) {
+            /* long enough, sometimes, to need several chunks */
+            char[] chars = new char[r.nextInt(i < 10 ? 3000 : 40)];
+            for (int j=0; j<chars.length; j++)
+                chars[j] = alphabet.charAt(r.nextInt(alphabet.length()));
+            String m = new String(chars);
+            byte[] b = ("xx" + m + "yy").getBytes("ISO-8859-1");
+
+            CaretNotator expected = new CaretNotator();
+            expected.appendRaw("<");
+            expected.append(m);
+            expected.appendNewline();
+            expected.appendMultiline(m);
+            expected.append('\u007f');
+
+            StringWriter w = new StringWriter();
+            StringBuilder sb = new StringBuilder();
+            StringBuffer other = new StringBuffer();
+            ByteBuffer bytes = ByteBuffer.allocate(3 * b.length + 16);
+            for (CaretWriter c : new CaretWriter[] { new CaretWriter(w),
+                    new CaretWriter(sb), new CaretWriter(other), new CaretWriter(bytes) }) {
+                c.appendRaw("<");
+                if (i % 2 == 0)
+                    c.append(m);
+                else
+                    c.append(b, 2, m.length());
+                c.appendNewline();
+                if (i % 2 == 0)
+                    c.appendMultiline(m);
+                else
+                    c.appendMultiline(b, 2, m.length());
+                c.append('\u007f');
+                if (i % 3 == 0)
+                    c.close();
+                else
+                    c.flush();
+            }
+            assertEquals(expected.toString(), w.toString());
+            assertEquals(expected.toString(), sb.toString());
+            assertEquals(expected.toString(), other.toString());
+            assertEquals(expected.toString(),
+                new String(bytes.array(), 0, bytes.position(), "ISO-8859-1"));
+        }
+
+        /* nothing is written until the buffer fills or is flushed */
+        StringWriter pending = new StringWriter();
+        CaretWriter c = new CaretWriter(pending);
+        c.append('\u0001');
+        c.append("abc");
+        assertEquals("", pending.toString());
+        c.flush();
+        assertEquals("^Aabc", pending.toString());
+
+        /* running out of room */
+        try {
+            CaretWriter small = new CaretWriter(ByteBuffer.allocate(3));
+            small.append("\u0001\u0002");
+            small.flush();
+            fail("Expecting BufferOverflowException");
+        } catch (BufferOverflowException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void readsCaretNotation() throws IOException {
+        String[] frames = { OBS, ACK, UPLINK, OBS.replace("\r\n", "\r\n\r\n") };
+        CaretNotator log = new CaretNotator();
+        log.appendNewline();
+        for (int i=0; i<300; i++)
+            log.appendMultiline(frames[i % frames.length]);
+        byte[] raw = log.toString().getBytes(CHARSET);
+        byte[] lf = log.toString().replace("\r\n", "\n").getBytes(CHARSET);
+
+        /* from a stream, with either sort of line break */
+        for (byte[] b : new byte[][] { raw, lf }) {
+            CaretReader r = new CaretReader(new ByteArrayInputStream(b));
+            for (int i=0; i<300; i++) {
+                AcarsMessage m = r.next();
+                assertNotNull(m);
+                assertEquals(frames[i % frames.length], new String(m.getBytes(), CHARSET));
+            }
+            assertNull(r.next());
+            r.close();
+        }
+
+        /* from a buffer, in place; the last line break is optional */
+        ByteBuffer bb = ByteBuffer.allocateDirect(raw.length);
+        bb.put(raw, 0, raw.length - System.lineSeparator().length()).flip();
+        CaretReader r = new CaretReader(bb);
+        FlyweightAcarsMessage f = new FlyweightAcarsMessage();
+        for (int i=0; i<300; i++) {
+            assertTrue(r.next(f));
+            assertTrue(f.isValid());
+            assertEquals(frames[i % frames.length],
+                new String(r.getBuffer(), r.getFrameOffset(), r.getFrameLength(), CHARSET));
+        }
+        assertFalse(r.next(f));
+
+        /* carets that aren't escapes, and a partial frame at the end */
+        r = new CaretReader(ByteBuffer.wrap("2.N1^a^ ^C\n2.N2".getBytes(CHARSET)));
+        assertEquals("2.N1^a^ \u0003", new String(r.next().getBytes(), CHARSET));
+        assertNull(r.next());
+    }
+}
@@ -1,8 +1,7 @@
 package info.koosah.acarsutils;
 
-import java.text.SimpleDateFormat;
+import java.io.IOException;
 import java.util.Date;
-import java.util.TimeZone;
 
 /**
  * Represents a single ACARS weather observation. Note that an ACARS
@@ -127,9 +126,34 @@ public class AcarsObservation {
         return o1 == o2 || o1.equals(o2);
     }
 
-    private static final SimpleDateFormat UTC = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-    static {
-        UTC.setTimeZone(TimeZone.getTimeZone("GMT"));
+    /**
+     * Append a string representation of this object; the same one
+     * toString returns. Safe to call from multiple threads.
+     * @param sb          Where to append it.
+     * @return            The StringBuilder.
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        sb.append(getClass().getName()).append(": obs=");
+        TextFormat.appendTimestamp(sb, observed.getTime());
+        sb.append(", alt=").append(altitude)
+            .append(", wsp=").append(windSpeed)
+            .append(", wdi=").append(windDirection)
+            .append(", tmp=");
+        TextFormat.appendFixed(sb, temperature, 1).append(", lat=");
+        TextFormat.appendFixed(sb, latitude, 3).append(", lon=");
+        return TextFormat.appendFixed(sb, longitude, 3);
+    }
+
+    /**
+     * Append a string representation of this object to any Appendable.
+     * @param a           Where to append it.
+     * @return            The Appendable.
+     * @throws IOException If the Appendable does.
+     */
+    public Appendable appendTo(Appendable a) throws IOException {
+        if (a instanceof StringBuilder)
+            return appendTo((StringBuilder) a);
+        return a.append(appendTo(new StringBuilder(128)));
     }
 
     /**
@@ -137,9 +161,6 @@ public class AcarsObservation {
      * @return string
      */
     public String toString() {
-        return String.format(
-            "%s: obs=%s, alt=%d, wsp=%d, wdi=%d, tmp=%.1f, lat=%.3f, lon=%.3f",
-            getClass().getName(), UTC.format(observed), altitude, windSpeed,
-            windDirection, temperature, latitude, longitude);
+        return appendTo(new StringBuilder(128)).toString();
     }
 }
@@ -0,0 +1,117 @@
+package info.koosah.acarsutils;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests for formatting observations as text.
+ */
+public class AcarsObservationTest {
+    private static final String FORMAT =
+        "%s: obs=%s, alt=%d, wsp=%d, wdi=%d, tmp=%.1f, lat=%.3f, lon=%.3f";
+
+    /* the old, slow, unsafe way */
+    private static String expected(AcarsObservation o) {
+        SimpleDateFormat utc = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        utc.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return String.format(FORMAT, o.getClass().getName(),
+            utc.format(o.getObserved()), o.getAltitude(), o.getWindSpeed(),
+            o.getWindDirection(), o.getTemperature(), o.getLatitude(),
+            o.getLongitude());
+    }
+
+    @Test
+    public void formatsNumbers() {
+        Random r = new Random(42);
+        double[] special = { 0.0, -0.0, 0.15, 0.125, 1.0005, -0.0001, 0.9995,
+            47.4735, -122.5, 999.9995, 1e14 + 0.5, Double.NaN };
+        for (int places=0; places<6; places++) {
+            for (double d : special)
+                assertEquals(String.format("%." + places + "f", d),
+                    TextFormat.appendFixed(new StringBuilder(), d, places).toString());
+            for (int i=0; i<20000; i++) {
+                /* decimals like the ones observations contain, plus
+                   arbitrary doubles */
+                int digits = r.nextInt(7);
+                double d = i % 2 == 0 ?
+                    (r.nextInt(2000000) - 1000000) / Math.pow(10.0, digits) :
+                    (r.nextDouble() - 0.5) * Math.pow(10.0, r.nextInt(8));
+                assertEquals(String.format("%." + places + "f", d),
+                    TextFormat.appendFixed(new StringBuilder(), d, places).toString());
+            }
+        }
+
+        /* floats get widened to doubles, just like String.format does */
+        for (int i=0; i<20000; i++) {
+            float f = (r.nextInt(2000) - 1000) / 10.0f;
+            assertEquals(String.format("%.1f", f),
+                TextFormat.appendFixed(new StringBuilder(), f, 1).toString());
+        }
+    }
+
+    @Test
+    public void formatsTimestamps() {
+        SimpleDateFormat utc = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        utc.setTimeZone(TimeZone.getTimeZone("GMT"));
+        Random r = new Random(42);
+        long[] special = { 0L, -1L, 951782400000L, 951868799999L, 1514764799999L,
+            1514764800000L, 4107542400000L, 253402300799000L };
+        for (long t : special)
+            assertEquals(utc.format(new Date(t)),
+                TextFormat.appendTimestamp(new StringBuilder(), t).toString());
+        for (int i=0; i<100000; i++) {
+            long t = (long) (r.nextDouble() * 253402300799000L);
+            assertEquals(utc.format(new Date(t)),
+                TextFormat.appendTimestamp(new StringBuilder(), t).toString());
+        }
+    }
+
+    @Test
+    public void formatsObservations() throws Exception {
+        AcarsObservation full = new AcarsObservation(48.8162, -123.562, 35004, new Date(1514763780000L))
+            .setTemperature(-50.5f).setWindDirection((short) 227).setWindSpeed((short) 55);
+        AcarsObservation bare = new AcarsObservation(-0.0005, 0.0, 0, new Date(0L));
+        AcarsObservation zero = new AcarsObservation(47.0, 9.9995, 100, new Date(-1L))
+            .setTemperature(-0.0f);
+        for (AcarsObservation o : new AcarsObservation[] { full, bare, zero }) {
+            assertEquals(expected(o), o.toString());
+            StringBuilder sb = new StringBuilder("x");
+            assertEquals("x" + expected(o), o.appendTo((Appendable) sb).toString());
+        }
+
+        /* many threads at once must not garble anything */
+        final AcarsObservation[] all = new AcarsObservation[64];
+        final String[] wanted = new String[all.length];
+        for (int i=0; i<all.length; i++) {
+            all[i] = new AcarsObservation(i, -i, i * 100, new Date(i * 86400017L)).setTemperature(i / 10.0f);
+            wanted[i] = expected(all[i]);
+        }
+        final List<String> errors = new ArrayList<String>();
+        Thread[] threads = new Thread[4];
+        for (int t=0; t<threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int n=0; n<1000; n++) {
+                        int i = n % all.length;
+                        String got = all[i].toString();
+                        if (!got.equals(wanted[i]))
+                            synchronized (errors) {
+                                errors.add(got);
+                            }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+}
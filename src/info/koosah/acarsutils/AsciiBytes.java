@@ -0,0 +1,112 @@
+package info.koosah.acarsutils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Bulk checks on arrays of 7-bit characters. On the air, ACARS characters
+ * carry odd parity in bit 7; in AcarsMessage and friends, bit 7 must be
+ * clear. These routines work a 64-bit word (eight characters) at a time,
+ * falling back to a byte at a time only for the last few bytes.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class AsciiBytes {
+    /* not intended to be instantiated */
+    private AsciiBytes() {}
+
+    /* Little-endian, so the lowest-addressed byte is the least
+       significant one. */
+    private static final VarHandle LONG =
+        MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long SEVEN_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+    /* offset of the lowest-addressed byte with a bit set in mask */
+    private static int firstByte(long mask) {
+        return Long.numberOfTrailingZeros(mask) >>> 3;
+    }
+
+    /* bit 0 of each byte becomes the XOR of all bits in that byte */
+    private static long parity(long w) {
+        w ^= w >>> 4;
+        w ^= w >>> 2;
+        w ^= w >>> 1;
+        return w;
+    }
+
+    /**
+     * Find the first byte that is not 7-bit ASCII.
+     * @param b           Array of bytes.
+     * @param off         Offset of the first byte to check.
+     * @param len         Number of bytes to check.
+     * @return            Offset of the first bad byte, or -1.
+     */
+    public static int firstNonAscii(byte[] b, int off, int len) {
+        int i = off, end = off + len;
+        for (int last = end - 8; i <= last; i += 8) {
+            long high = (long) LONG.get(b, i) & HIGH_BITS;
+            if (high != 0)
+                return i + firstByte(high);
+        }
+        for (; i < end; i++) {
+            if (b[i] < 0)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first byte that does not have odd parity.
+     * @param b           Array of bytes.
+     * @param off         Offset of the first byte to check.
+     * @param len         Number of bytes to check.
+     * @return            Offset of the first bad byte, or -1.
+     */
+    public static int firstBadParity(byte[] b, int off, int len) {
+        int i = off, end = off + len;
+        for (int last = end - 8; i <= last; i += 8) {
+            long bad = ~parity((long) LONG.get(b, i)) & LOW_BITS;
+            if (bad != 0)
+                return i + firstByte(bad);
+        }
+        for (; i < end; i++) {
+            if ((Integer.bitCount(b[i] & 0xff) & 1) == 0)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Verify the parity of, and then clear the parity bit from, all the
+     * bytes in a range. Every byte gets stripped, even if a bad one is
+     * found.
+     * @param b           Array of bytes, modified in place.
+     * @param off         Offset of the first byte.
+     * @param len         Number of bytes.
+     * @return            Offset of the first byte with bad parity, or -1.
+     */
+    public static int stripParity(byte[] b, int off, int len) {
+        int first = -1;
+        int i = off, end = off + len;
+        for (int last = end - 8; i <= last; i += 8) {
+            long w = (long) LONG.get(b, i);
+            if (first < 0) {
+                long bad = ~parity(w) & LOW_BITS;
+                if (bad != 0)
+                    first = i + firstByte(bad);
+            }
+            LONG.set(b, i, w & SEVEN_BITS);
+        }
+        for (; i < end; i++) {
+            int c = b[i] & 0xff;
+            if (first < 0 && (Integer.bitCount(c) & 1) == 0)
+                first = i;
+            b[i] = (byte) (c & 0x7f);
+        }
+        return first;
+    }
+}
@@ -4,7 +4,8 @@ package info.koosah.acarsutils;
  * A class to help visualize what's in a java.lang.String containing ASCII
  * characters, by turning non-printable ASCII into "caret notation". Non-
  * ASCII gets passed as-is. This class uses StringBuilder so is not
- * thread-safe.
+ * thread-safe. To write caret notation out as it is generated instead,
+ * use CaretWriter.
  * @author David Barts <n5jrn@me.com>
  */
 public class CaretNotator {
@@ -23,9 +24,10 @@ public class CaretNotator {
      * @param c           Character to append.
      */
     public void append(char c) {
-        if (c < '\040' || c == '\177') {
+        char e = CaretWriter.escape(c);
+        if (e != 0) {
             buf.append('^');
-            c ^= 0100;
+            c = e;
         }
         buf.append(c);
     }
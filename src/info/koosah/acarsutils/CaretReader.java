@@ -0,0 +1,211 @@
+package info.koosah.acarsutils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Reads back logs of ACARS frames written with CaretNotator.appendMultiline
+ * (or CaretWriter.appendMultiline), undoing the caret notation to recover
+ * the raw frames. Each frame is taken to end with the ETX (^C) or ETB (^W)
+ * that ends a line; line breaks within a frame become CR LF, as they were
+ * before being logged. Blank lines between frames are ignored.
+ *
+ * Caret notation does not escape carets, so a caret followed by one of
+ * the characters used in escapes is always taken to be an escape. Raw CRs
+ * never appear in such logs except as part of a line break, so logs with
+ * either LF or CR LF line breaks can be read.
+ *
+ * Input may be a stream, a channel or a buffer (e.g. a memory-mapped
+ * file). Frames are decoded in a single pass into a buffer that is reused
+ * for the life of the reader, and can be examined in place with a
+ * FlyweightAcarsMessage, as with AcarsFrameReader. This class is not
+ * thread-safe.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public class CaretReader implements Closeable {
+    /* Special characters. */
+    private static final byte ETX = 3;
+    private static final byte ETB = 0x17;
+    private static final int CR = '\r';
+    private static final int LF = '\n';
+    private static final int CARET = '^';
+
+    /* Size of reads from a channel. */
+    private static final int CHUNK = 65536;
+
+    /* No legitimate frame is anywhere near this long; if we go this long
+       without seeing a terminator, assume we lost it and resynchronize. */
+    private static final int MAX_FRAME = 4096;
+
+    private final ReadableByteChannel in;
+    private final ByteBuffer src;
+    private byte[] frame;
+    private int length;
+    private int pending;
+
+    /**
+     * Constructor (buffer version). Reads from the buffer's position to its
+     * limit, advancing its position.
+     * @param buf         Buffer containing the log.
+     */
+    public CaretReader(ByteBuffer buf) {
+        this(null, buf);
+    }
+
+    /**
+     * Constructor (channel version).
+     * @param in          Channel to read the log from.
+     */
+    public CaretReader(ReadableByteChannel in) {
+        this(in, ByteBuffer.allocate(CHUNK).flip());
+    }
+
+    /**
+     * Constructor (stream version).
+     * @param in          Stream to read the log from.
+     */
+    public CaretReader(InputStream in) {
+        this(Channels.newChannel(in));
+    }
+
+    private CaretReader(ReadableByteChannel in, ByteBuffer src) {
+        this.in = in;
+        this.src = src;
+        frame = new byte[256];
+        length = 0;
+        pending = -1;
+    }
+
+    /* get the next byte of input, or -1 at the end */
+    private int read() throws IOException {
+        if (pending >= 0) {
+            int ret = pending;
+            pending = -1;
+            return ret;
+        }
+        if (!src.hasRemaining()) {
+            if (in == null)
+                return -1;
+            src.clear();
+            int n;
+            do {
+                n = in.read(src);
+            } while (n == 0);
+            src.flip();
+            if (n < 0)
+                return -1;
+        }
+        return src.get() & 0xff;
+    }
+
+    private void put(int c) {
+        if (length == frame.length)
+            frame = Arrays.copyOf(frame, frame.length * 2);
+        frame[length++] = (byte) c;
+    }
+
+    /**
+     * Advance to the next frame. Partial frames at the end of input are
+     * discarded.
+     * @return            True if a frame was read, false at end of input.
+     * @throws IOException On I/O errors.
+     */
+    public boolean nextFrame() throws IOException {
+        length = 0;
+        boolean ended = false;
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == CR)
+                continue;
+            if (c == LF) {
+                if (ended)
+                    return true;
+                if (length > 0) {
+                    put(CR);
+                    put(LF);
+                }
+                continue;
+            }
+            if (c == CARET) {
+                int d = read();
+                if (d == '?' || (d >= '@' && d <= '_'))
+                    c = d ^ 0100;
+                else
+                    pending = d;
+            }
+            put(c);
+            ended = c == ETX || c == ETB;
+            if (length > MAX_FRAME)
+                length = 0;
+        }
+
+        /* a final frame need not be followed by a line break */
+        return ended;
+    }
+
+    /**
+     * Get the buffer containing the current frame. This buffer is owned by
+     * the reader and may be overwritten or replaced by the next read.
+     * @return            Byte array.
+     */
+    public byte[] getBuffer() {
+        return frame;
+    }
+
+    /**
+     * Get the offset of the current frame in the buffer.
+     * @return            Offset.
+     */
+    public int getFrameOffset() {
+        return 0;
+    }
+
+    /**
+     * Get the length of the current frame, including its terminator.
+     * @return            Length.
+     */
+    public int getFrameLength() {
+        return length;
+    }
+
+    /**
+     * Read the next frame, copying it into a new message. The message is
+     * not parsed.
+     * @return            Message, or null at end of input.
+     * @throws IOException On I/O errors.
+     */
+    public AcarsMessage next() throws IOException {
+        if (!nextFrame())
+            return null;
+        return new AcarsMessage(Arrays.copyOf(frame, length));
+    }
+
+    /**
+     * Read the next frame, pointing a flyweight message at it in place.
+     * Whether the frame parsed can be determined with isValid().
+     * @param m           Message to point at the frame.
+     * @return            True if a frame was read, false at end of input.
+     * @throws IOException On I/O errors.
+     */
+    public boolean next(FlyweightAcarsMessage m) throws IOException {
+        if (!nextFrame())
+            return false;
+        m.wrap(frame, 0, length);
+        return true;
+    }
+
+    /**
+     * Close the underlying channel, if any.
+     * @throws IOException On I/O errors.
+     */
+    public void close() throws IOException {
+        if (in != null)
+            in.close();
+    }
+}
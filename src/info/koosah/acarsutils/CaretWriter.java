@@ -0,0 +1,263 @@
+package info.koosah.acarsutils;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Like CaretNotator, but writes caret notation straight to an Appendable
+ * (e.g. a Writer) or a ByteBuffer instead of accumulating it all in
+ * memory, so large messages can be rendered without building a huge
+ * String first. Text may come from a CharSequence or from a range of a
+ * byte array; bytes are taken to be ISO-8859-1 characters, so they need
+ * not be decoded first.
+ *
+ * Escapes come from a 128-entry table, shared with CaretNotator. Output
+ * is assembled in a small buffer, which is only written out once it gets
+ * full, when flush() is called, or when the writer is closed, so callers
+ * must do one of the latter when done. When writing to a ByteBuffer,
+ * characters beyond ISO-8859-1 become '?', and running out of room throws
+ * BufferOverflowException (possibly after some of the output has been
+ * written). This class is not thread-safe.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public class CaretWriter implements Closeable, Flushable {
+    private static final String NL = System.lineSeparator();
+
+    /* How many characters to buffer before writing. */
+    private static final int CHUNK = 512;
+
+    /* For each ASCII character, the character to put after the caret,
+       or zero if it needs no escaping. */
+    private static final char[] ESCAPES = new char[128];
+    static {
+        for (int c=0; c<'\040'; c++)
+            ESCAPES[c] = (char) (c ^ 0100);
+        ESCAPES['\177'] = '\177' ^ 0100;
+    }
+
+    /**
+     * Get how a character is escaped.
+     * @param c           Character.
+     * @return            Character to put after the caret, or zero if
+     *                    the character needs no escaping.
+     */
+    static char escape(char c) {
+        return c < ESCAPES.length ? ESCAPES[c] : 0;
+    }
+
+    private final Appendable out;
+    private final ByteBuffer bytes;
+    private final char[] buf;
+    private int n;
+
+    private CaretWriter(Appendable out, ByteBuffer bytes) {
+        this.out = out;
+        this.bytes = bytes;
+        buf = new char[CHUNK];
+        n = 0;
+    }
+
+    /**
+     * Constructor, for writing to an Appendable.
+     * @param out         Where to write.
+     */
+    public CaretWriter(Appendable out) {
+        this(out, null);
+        if (out == null)
+            throw new IllegalArgumentException("Output must not be null.");
+    }
+
+    /**
+     * Constructor, for writing to a ByteBuffer.
+     * @param out         Where to write.
+     */
+    public CaretWriter(ByteBuffer out) {
+        this(null, out);
+        if (out == null)
+            throw new IllegalArgumentException("Output must not be null.");
+    }
+
+    /* buffer a character, writing out the buffer if full */
+    private void put(char c) throws IOException {
+        if (n == buf.length)
+            drain();
+        buf[n++] = c;
+    }
+
+    /* buffer a character, uparrow-coding if needed */
+    private void putEscaped(char c) throws IOException {
+        char e = escape(c);
+        if (e != 0) {
+            put('^');
+            c = e;
+        }
+        put(c);
+    }
+
+    private void putNewline() throws IOException {
+        for (int i=0; i<NL.length(); i++)
+            put(NL.charAt(i));
+    }
+
+    /* write out the buffer */
+    private void drain() throws IOException {
+        if (n == 0)
+            return;
+        if (bytes != null) {
+            if (bytes.remaining() < n)
+                throw new BufferOverflowException();
+            for (int i=0; i<n; i++) {
+                char c = buf[i];
+                bytes.put((byte) (c > '\377' ? '?' : c));
+            }
+        } else if (out instanceof Writer) {
+            ((Writer) out).write(buf, 0, n);
+        } else if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(buf, 0, n);
+        } else {
+            out.append(CharBuffer.wrap(buf, 0, n));
+        }
+        n = 0;
+    }
+
+    /* character i of either a CharSequence or a byte array */
+    private static char charAt(CharSequence s, byte[] b, int i) {
+        return s != null ? s.charAt(i) : (char) (b[i] & 0xff);
+    }
+
+    /* uparrow-code a range of either a CharSequence or a byte array */
+    private void escaped(CharSequence s, byte[] b, int start, int end) throws IOException {
+        for (int i=start; i<end; i++)
+            putEscaped(charAt(s, b, i));
+    }
+
+    /* see appendMultiline */
+    private void multiline(CharSequence s, byte[] b, int start, int end) throws IOException {
+        int last = end - 1;
+        for (int i=start; i<end; i++) {
+            char c = charAt(s, b, i);
+            switch(c) {
+            case '\t':
+                /* tabs get passed verbatim */
+                put(c);
+                break;
+            case '\r':
+                /* carriage return before line feed or at end gets deleted */
+                if (i != last && charAt(s, b, i+1) != '\n')
+                    putEscaped(c);
+                break;
+            case '\n':
+                /* delete LF at end, map others to newline */
+                if (i != last)
+                    putNewline();
+                break;
+            default:
+                putEscaped(c);
+                break;
+            }
+        }
+        putNewline();
+    }
+
+    /**
+     * Append a single character, uparrow-coding if needed.
+     * @param c           Character to append.
+     * @throws IOException If writing fails.
+     */
+    public void append(char c) throws IOException {
+        putEscaped(c);
+    }
+
+    /**
+     * Append a string, up-arrow encoding characters as needed.
+     * @param s           String to append.
+     * @throws IOException If writing fails.
+     */
+    public void append(CharSequence s) throws IOException {
+        escaped(s, null, 0, s.length());
+    }
+
+    /**
+     * Append bytes, up-arrow encoding characters as needed.
+     * @param b           Bytes to append.
+     * @param off         Offset of the first byte.
+     * @param len         Number of bytes.
+     * @throws IOException If writing fails.
+     */
+    public void append(byte[] b, int off, int len) throws IOException {
+        escaped(null, b, off, off + len);
+    }
+
+    /**
+     * Append a system-dependent newline sequence, which is not
+     * uparrow-encoded.
+     * @throws IOException If writing fails.
+     */
+    public void appendNewline() throws IOException {
+        putNewline();
+    }
+
+    /**
+     * Append a multi-line message. Newline sequences are recognized and
+     * are mapped to the system-dependant newline sequence instead of being
+     * uparrow-encoded. Tabs are simply passed verbatim.
+     * @param m           Message to append
+     * @throws IOException If writing fails.
+     */
+    public void appendMultiline(CharSequence m) throws IOException {
+        multiline(m, null, 0, m.length());
+    }
+
+    /**
+     * Append a multi-line message held as bytes; see above.
+     * @param b           Bytes to append.
+     * @param off         Offset of the first byte.
+     * @param len         Number of bytes.
+     * @throws IOException If writing fails.
+     */
+    public void appendMultiline(byte[] b, int off, int len) throws IOException {
+        multiline(null, b, off, off + len);
+    }
+
+    /**
+     * Append a string, doing no uparrow-coding whatsoever.
+     * @param s           String to append.
+     * @throws IOException If writing fails.
+     */
+    public void appendRaw(CharSequence s) throws IOException {
+        int len = s.length();
+        for (int i=0; i<len; i++)
+            put(s.charAt(i));
+    }
+
+    /**
+     * Write out everything appended so far, flushing the output too if it
+     * is Flushable.
+     * @throws IOException If writing fails.
+     */
+    public void flush() throws IOException {
+        drain();
+        if (out instanceof Flushable)
+            ((Flushable) out).flush();
+    }
+
+    /**
+     * Write out everything appended so far, then close the output if it is
+     * Closeable.
+     * @throws IOException If writing or closing fails.
+     */
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            if (out instanceof Closeable)
+                ((Closeable) out).close();
+        }
+    }
+}
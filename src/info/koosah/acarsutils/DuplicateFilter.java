@@ -0,0 +1,199 @@
+package info.koosah.acarsutils;
+
+import java.util.Arrays;
+
+/**
+ * Suppresses duplicate receptions of the same message. When listening on
+ * several frequencies or at several sites, the same frame often gets
+ * received more than once; there is no point in decoding it more than once.
+ *
+ * Messages are identified by a 64-bit hash of their registration, label,
+ * block ID, message ID and text. The channel a message was received on is
+ * deliberately not part of its identity, as catching the same frame on
+ * several channels is precisely what we're trying to detect. The first
+ * copy of a message is always accepted; later copies are accepted only if
+ * they have fewer errors than the best copy seen so far, so a clean
+ * reception can supersede a garbled one. Note that the filter cannot
+ * recall a copy it has already accepted: when a better copy arrives
+ * later, both copies will have been passed downstream, and if both get
+ * decoded their observations will appear twice. Callers that cannot
+ * tolerate this should hold messages briefly and keep only the best.
+ *
+ * Hashes are kept in two fixed-size generations. New hashes go into the
+ * current generation; when it fills up or gets older than the window, it
+ * becomes the previous generation and the old previous one is cleared and
+ * reused. Memory use is thus fixed, and a message is remembered for
+ * between one and two windows' worth of time (less if traffic is heavy
+ * enough to fill a generation early). Methods are synchronized, so a
+ * filter may be shared by multiple threads.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public class DuplicateFilter {
+    /* Marks an empty slot; real hashes of zero get changed to one. */
+    private static final long EMPTY = 0L;
+
+    /* FNV-1a parameters */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /* One generation: an open-addressed hash table. */
+    private static class Generation {
+        private final long[] keys;
+        private final int[] errors;
+        private final int mask;
+        private int size;
+        private long started;
+
+        public Generation(int slots) {
+            keys = new long[slots];
+            errors = new int[slots];
+            mask = slots - 1;
+            size = 0;
+        }
+
+        /* find a key's slot, or the empty slot where it would go */
+        public int find(long key) {
+            int i = (int) (key ^ (key >>> 32)) & mask;
+            while (keys[i] != EMPTY && keys[i] != key)
+                i = (i + 1) & mask;
+            return i;
+        }
+
+        public void clear(long now) {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+            started = now;
+        }
+    }
+
+    private final int capacity;
+    private final long window;
+    private Generation current, previous;
+
+    /* number of messages rejected as duplicates */
+    private long suppressed;
+    public synchronized long getSuppressed() {
+        return suppressed;
+    }
+
+    /**
+     * Constructor.
+     * @param capacity    Number of messages per generation.
+     * @param window      Milliseconds per generation.
+     */
+    public DuplicateFilter(int capacity, long window) {
+        if (capacity < 1 || capacity > (1 << 28))
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        if (window < 1)
+            throw new IllegalArgumentException("Invalid window: " + window);
+        this.capacity = capacity;
+        this.window = window;
+
+        /* keep the load factor at or below 1/2 */
+        int slots = Integer.highestOneBit(capacity) << 2;
+        current = new Generation(slots);
+        previous = new Generation(slots);
+        suppressed = 0;
+    }
+
+    private static long mix(long h, CharSequence s) {
+        if (s != null) {
+            int len = s.length();
+            for (int i=0; i<len; i++)
+                h = (h ^ s.charAt(i)) * FNV_PRIME;
+        }
+        /* separator, so field boundaries matter */
+        return (h ^ 0xffff) * FNV_PRIME;
+    }
+
+    /**
+     * Compute the hash that identifies a message.
+     * @param m           Message.
+     * @return            64-bit hash.
+     */
+    public static long hash(IAcarsMessage m) {
+        long h = FNV_BASIS;
+        if (m instanceof FlyweightAcarsMessage) {
+            /* hash the buffer in place, rather than making Strings */
+            FlyweightAcarsMessage f = (FlyweightAcarsMessage) m;
+            h = mix(h, f.getRegistrationChars());
+            h = mix(h, f.getLabelChars());
+            h = (h ^ f.getBlockId()) * FNV_PRIME;
+            h = mix(h, f.getMessageIdChars());
+            h = mix(h, f.getMessageChars());
+        } else {
+            h = mix(h, m.getRegistration());
+            h = mix(h, m.getLabel());
+            h = (h ^ m.getBlockId()) * FNV_PRIME;
+            h = mix(h, m.getMessageId());
+            h = mix(h, m.getMessage());
+        }
+
+        /* finalize (from MurmurHash3), so all bits are well-mixed */
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1L : h;
+    }
+
+    /**
+     * Decide whether a message should be passed on.
+     * @param m           Message, which must have been successfully parsed.
+     * @param errors      Number of errors detected in this copy.
+     * @param now         Current time, in milliseconds.
+     * @return            True if this is the first copy of the message, or
+     *                    a better copy than any seen so far.
+     */
+    public synchronized boolean accept(IAcarsMessage m, int errors, long now) {
+        long key = hash(m);
+
+        /* already seen? */
+        int best = Integer.MAX_VALUE;
+        int slot = current.find(key);
+        if (current.keys[slot] != EMPTY) {
+            best = current.errors[slot];
+        } else {
+            int pslot = previous.find(key);
+            if (previous.keys[pslot] != EMPTY)
+                best = previous.errors[pslot];
+        }
+        if (errors >= best) {
+            suppressed++;
+            return false;
+        }
+
+        /* remember it, rotating generations as needed */
+        if (current.keys[slot] == EMPTY) {
+            if (current.size == 0) {
+                current.started = now;
+            } else if (current.size >= capacity || now - current.started >= window) {
+                Generation g = previous;
+                previous = current;
+                current = g;
+                current.clear(now);
+                slot = current.find(key);
+            }
+        }
+        if (current.keys[slot] == EMPTY) {
+            current.keys[slot] = key;
+            current.size++;
+        }
+        current.errors[slot] = errors;
+        return true;
+    }
+
+    /**
+     * Decide whether a message should be passed on, using the error count
+     * it was received with.
+     * @param m           Message, which must have been successfully parsed.
+     * @param now         Current time, in milliseconds.
+     * @return            True if this is the first copy of the message, or
+     *                    a better copy than any seen so far.
+     */
+    public boolean accept(AcarsMessage m, long now) {
+        return accept(m, m.getErrors(), now);
+    }
+}
@@ -0,0 +1,363 @@
+package info.koosah.acarsutils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A reusable view of a raw ACARS message. Unlike AcarsMessage, which
+ * copies the raw bytes into a String and then breaks that into substrings,
+ * this class merely remembers where each field lives in the underlying
+ * buffer. It can be re-pointed at another message with wrap(), so a single
+ * instance can serve an entire stream of messages.
+ *
+ * Fields are available as offsets into the buffer and as CharSequence
+ * views; Strings are only built (then cached until the next wrap) when one
+ * of the IAcarsMessage getters is called. The views are reused, so they,
+ * like the offsets, are only valid until the next call to wrap(). This
+ * class is not thread-safe.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public class FlyweightAcarsMessage implements IAcarsMessage {
+    /* Character set the messages use. */
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    /* Frame layout; see ParsedAcarsMessage.parse(). */
+    private static final int MIN_LENGTH = 13;
+    private static final int REG_OFFSET = 1;
+    private static final int REG_LENGTH = 7;
+    private static final int LABEL_OFFSET = 9;
+    private static final int LABEL_LENGTH = 2;
+    private static final int TEXT_OFFSET = 13;
+    private static final int MSGID_LENGTH = 4;
+    private static final int FLIGHT_LENGTH = 6;
+    private static final int SOURCE_LENGTH = 2;
+    private static final byte ETX = 3;
+    private static final byte ETB = 0x17;
+
+    /* the buffer we are currently looking at */
+    private byte[] buf;
+    private int base;
+    private int length;
+    private boolean valid;
+
+    /* scratch space for buffers without accessible arrays */
+    private byte[] scratch;
+
+    /* field locations, as absolute offsets into buf; -1 means absent */
+    private int messageIdOffset, messageIdLength;
+    private int flightIdOffset, flightIdLength;
+    private int messageOffset, messageLength;
+    private int sourceOffset;
+
+    /* Strings, built on demand */
+    private String registration, label, messageId, flightId, source, message;
+
+    /* reusable views */
+    private final Chars registrationChars = new Chars();
+    private final Chars labelChars = new Chars();
+    private final Chars messageIdChars = new Chars();
+    private final Chars flightIdChars = new Chars();
+    private final Chars sourceChars = new Chars();
+    private final Chars messageChars = new Chars();
+
+    /**
+     * A CharSequence view of part of the buffer.
+     */
+    private class Chars implements CharSequence {
+        private int offset, count;
+
+        private Chars set(int offset, int count) {
+            this.offset = offset;
+            this.count = count;
+            return this;
+        }
+
+        public int length() {
+            return count;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= count)
+                throw new IndexOutOfBoundsException("Index out of range: " + index);
+            return (char) buf[offset + index];
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > count || start > end)
+                throw new IndexOutOfBoundsException("Invalid range: " + start + ", " + end);
+            return new Chars().set(offset + start, end - start);
+        }
+
+        public String toString() {
+            return new String(buf, offset, count, CHARSET);
+        }
+    }
+
+    /**
+     * Constructor. The message must be pointed at something with wrap()
+     * before it can be used.
+     */
+    public FlyweightAcarsMessage() {
+        valid = false;
+    }
+
+    /**
+     * Point this message at a raw message stored in an array, and parse
+     * it. The array is not copied, so it must not be changed while this
+     * message is in use.
+     * @param b           Array containing the raw message.
+     * @param off         Offset of the message within the array.
+     * @param len         Length of the message.
+     * @return            Whether or not parsing was successful.
+     */
+    public boolean wrap(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off > b.length - len)
+            throw new IndexOutOfBoundsException("Invalid range: " + off + ", " + len);
+        buf = b;
+        base = off;
+        length = len;
+        registration = label = messageId = flightId = source = message = null;
+        valid = parse();
+        return valid;
+    }
+
+    /**
+     * Point this message at a raw message stored in an array, and parse it.
+     * @param b           Array containing the raw message.
+     * @return            Whether or not parsing was successful.
+     */
+    public boolean wrap(byte[] b) {
+        return wrap(b, 0, b.length);
+    }
+
+    /**
+     * Point this message at the remaining bytes in a buffer, and parse
+     * them. The buffer's position is not changed. Buffers backed by an
+     * accessible array are used in place; others (e.g. direct buffers)
+     * are copied into scratch space that is reused from call to call.
+     * @param bb          Buffer containing the raw message.
+     * @return            Whether or not parsing was successful.
+     */
+    public boolean wrap(ByteBuffer bb) {
+        int len = bb.remaining();
+        if (bb.hasArray())
+            return wrap(bb.array(), bb.arrayOffset() + bb.position(), len);
+        if (scratch == null || scratch.length < len)
+            scratch = new byte[Math.max(len, 256)];
+        bb.duplicate().get(scratch, 0, len);
+        return wrap(scratch, 0, len);
+    }
+
+    /* mirrors ParsedAcarsMessage.parse(), but only locates fields */
+    private boolean parse() {
+        /* ensure it's ASCII */
+        int end = base + length;
+        if (AsciiBytes.firstNonAscii(buf, base, length) >= 0)
+            return false;
+
+        /* runt packets are not parseable */
+        if (length < MIN_LENGTH)
+            return false;
+
+        /* find the fields */
+        messageIdOffset = flightIdOffset = sourceOffset = -1;
+        messageIdLength = flightIdLength = 0;
+        byte mode = buf[base];
+        byte blockId = buf[base + 11];
+        byte blockStart = buf[base + 12];
+        int k = base + TEXT_OFFSET;
+        if (blockStart != ETX && mode <= 'Z' && blockId <= '9') {
+            messageIdOffset = k;
+            messageIdLength = Integer.min(end - k, MSGID_LENGTH);
+            k += messageIdLength;
+            flightIdOffset = k;
+            flightIdLength = Integer.min(end - k, FLIGHT_LENGTH);
+            k += flightIdLength;
+        }
+        messageOffset = k;
+        messageLength = end - 1 > k ? end - 1 - k : 0;
+        if (buf[base + LABEL_OFFSET] == 'H' && buf[base + LABEL_OFFSET + 1] == '1') {
+            int limit = Integer.min(messageLength, 4);
+            for (int i=0; i<limit; i++) {
+                if (buf[messageOffset + i] == '#') {
+                    if (messageLength - i >= 3)
+                        sourceOffset = messageOffset + i + 1;
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void verifyState() {
+        if (buf == null)
+            throw new IllegalStateException("Message has not been wrapped.");
+        if (!valid)
+            throw new IllegalStateException("Message could not be parsed.");
+    }
+
+    private String string(int offset, int count) {
+        return new String(buf, offset, count, CHARSET);
+    }
+
+    /**
+     * Whether the last call to wrap() parsed successfully.
+     * @return            Boolean.
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Get the array this message currently points into.
+     * @return            Byte array.
+     */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Get the offset of the start of the raw message in the buffer.
+     * @return            Offset.
+     */
+    public int getFrameOffset() {
+        return base;
+    }
+
+    /**
+     * Get the length of the raw message.
+     * @return            Length.
+     */
+    public int getFrameLength() {
+        return length;
+    }
+
+    /**
+     * Get the offset of the message body in the buffer.
+     * @return            Offset.
+     */
+    public int getMessageOffset() {
+        verifyState();
+        return messageOffset;
+    }
+
+    /**
+     * Get the length of the message body.
+     * @return            Length.
+     */
+    public int getMessageLength() {
+        verifyState();
+        return messageLength;
+    }
+
+    public char getMode() {
+        verifyState();
+        return (char) buf[base];
+    }
+
+    public char getAcknowledge() {
+        verifyState();
+        return (char) buf[base + 8];
+    }
+
+    public char getBlockId() {
+        verifyState();
+        return (char) buf[base + 11];
+    }
+
+    public boolean isFinalBlock() {
+        verifyState();
+        return buf[base + length - 1] != ETB;
+    }
+
+    public CharSequence getRegistrationChars() {
+        verifyState();
+        return registrationChars.set(base + REG_OFFSET, REG_LENGTH);
+    }
+
+    public String getRegistration() {
+        verifyState();
+        if (registration == null)
+            registration = string(base + REG_OFFSET, REG_LENGTH);
+        return registration;
+    }
+
+    public CharSequence getLabelChars() {
+        verifyState();
+        return labelChars.set(base + LABEL_OFFSET, LABEL_LENGTH);
+    }
+
+    public int getLabelCode() {
+        verifyState();
+        return AcarsLabels.code((char) buf[base + LABEL_OFFSET], (char) buf[base + LABEL_OFFSET + 1]);
+    }
+
+    public String getLabel() {
+        verifyState();
+        if (label == null) {
+            label = AcarsLabels.label(getLabelCode());
+            if (label == null)
+                label = string(base + LABEL_OFFSET, LABEL_LENGTH);
+        }
+        return label;
+    }
+
+    public CharSequence getMessageIdChars() {
+        verifyState();
+        return messageIdOffset < 0 ? null : messageIdChars.set(messageIdOffset, messageIdLength);
+    }
+
+    public String getMessageId() {
+        verifyState();
+        if (messageId == null && messageIdOffset >= 0)
+            messageId = string(messageIdOffset, messageIdLength);
+        return messageId;
+    }
+
+    public CharSequence getFlightIdChars() {
+        verifyState();
+        return flightIdOffset < 0 ? null : flightIdChars.set(flightIdOffset, flightIdLength);
+    }
+
+    public String getFlightId() {
+        verifyState();
+        if (flightId == null && flightIdOffset >= 0)
+            flightId = string(flightIdOffset, flightIdLength);
+        return flightId;
+    }
+
+    public CharSequence getSourceChars() {
+        verifyState();
+        return sourceOffset < 0 ? null : sourceChars.set(sourceOffset, SOURCE_LENGTH);
+    }
+
+    public int getSourceCode() {
+        verifyState();
+        if (sourceOffset < 0)
+            return AcarsLabels.NONE;
+        return AcarsLabels.code((char) buf[sourceOffset], (char) buf[sourceOffset + 1]);
+    }
+
+    public String getSource() {
+        verifyState();
+        if (source == null && sourceOffset >= 0) {
+            source = AcarsLabels.source(getSourceCode());
+            if (source == null)
+                source = string(sourceOffset, SOURCE_LENGTH);
+        }
+        return source;
+    }
+
+    public CharSequence getMessageChars() {
+        verifyState();
+        return messageChars.set(messageOffset, messageLength);
+    }
+
+    public String getMessage() {
+        verifyState();
+        if (message == null)
+            message = string(messageOffset, messageLength);
+        return message;
+    }
+}
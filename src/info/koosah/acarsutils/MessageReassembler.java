@@ -0,0 +1,255 @@
+package info.koosah.acarsutils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reassembles ACARS messages that span multiple blocks. Each block is
+ * sent as its own frame; all but the last end with ETB instead of ETX.
+ * The first three characters of the message ID stay the same for all the
+ * blocks of a message, and the fourth is a sequence letter ('A' for the
+ * first block, 'B' for the second, etc.), so blocks are grouped by
+ * registration plus message ID prefix and ordered by sequence letter.
+ * Because each block must be acknowledged before the next is sent, blocks
+ * arrive in order; a final block with nothing pending before it is taken
+ * to be a single-block message.
+ *
+ * Memory use is bounded: there is a limit on the number of partially
+ * assembled messages, beyond which the oldest get evicted, and partial
+ * messages older than a timeout get evicted as well. To keep contention
+ * down when many threads feed blocks in at once, pending messages are
+ * spread across a number of independently-locked shards.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public class MessageReassembler {
+    /* Message IDs are a 3-character prefix plus a sequence letter. */
+    private static final int PREFIX_LENGTH = 3;
+
+    /* Most blocks we will hold for a single message. */
+    private static final int MAX_BLOCKS = 26;
+
+    /* Get the block's position in its message, or -1 if unknown. */
+    private static int sequence(String id) {
+        int seq = id.length() > PREFIX_LENGTH ? id.charAt(PREFIX_LENGTH) - 'A' : -1;
+        return seq < MAX_BLOCKS ? seq : -1;
+    }
+
+    /* A partially-assembled message. */
+    private static class Pending {
+        private final long started;
+        private final IAcarsMessage[] blocks;
+        private int count, last;
+
+        public Pending(long started) {
+            this.started = started;
+            blocks = new IAcarsMessage[MAX_BLOCKS];
+            count = 0;
+            last = -1;
+        }
+
+        /* returns true if this completed the message */
+        public boolean add(IAcarsMessage block, boolean isLast) {
+            int seq = sequence(block.getMessageId());
+            if (seq < 0)
+                seq = Integer.min(count, MAX_BLOCKS - 1);
+            if (blocks[seq] == null)
+                count++;
+            blocks[seq] = block;
+            if (isLast)
+                last = seq;
+            return last >= 0 && count == last + 1;
+        }
+
+        /* put together what we have */
+        public IAcarsMessage assemble() {
+            IAcarsMessage first = null;
+            StringBuilder text = new StringBuilder();
+            for (IAcarsMessage block : blocks) {
+                if (block == null)
+                    continue;
+                if (first == null)
+                    first = block;
+                text.append(block.getMessage());
+            }
+            String label = first.getLabel();
+            String source = first.getSource();
+            return new ParsedAcarsMessage(first.getMode(),
+                first.getRegistration(), first.getAcknowledge(),
+                AcarsLabels.code(label), label, first.getBlockId(),
+                first.getMessageId(), first.getFlightId(),
+                AcarsLabels.code(source), source, text.toString(), true, null);
+        }
+    }
+
+    /* One shard. Iteration order is insertion order, which (because time
+       only moves forward) is also age order. */
+    private static class Shard extends LinkedHashMap<String, Pending> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+        private long evicted;
+
+        public Shard(int capacity) {
+            super(16, 0.75f, false);
+            this.capacity = capacity;
+            evicted = 0;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<String, Pending> eldest) {
+            if (size() > capacity) {
+                evicted++;
+                return true;
+            }
+            return false;
+        }
+
+        /* evict expired entries, optionally keeping what we evict */
+        public void expire(long cutoff, List<IAcarsMessage> into) {
+            Iterator<Pending> i = values().iterator();
+            while (i.hasNext()) {
+                Pending p = i.next();
+                if (p.started > cutoff)
+                    break;
+                i.remove();
+                evicted++;
+                if (into != null)
+                    into.add(p.assemble());
+            }
+        }
+    }
+
+    private final Shard[] shards;
+    private final long timeout;
+
+    /**
+     * Constructor.
+     * @param capacity    Maximum number of partial messages to hold.
+     * @param timeout     Milliseconds to wait for a message's remaining
+     *                    blocks before giving up on it.
+     * @param nshards     Number of shards; rounded up to a power of two.
+     */
+    public MessageReassembler(int capacity, long timeout, int nshards) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        if (timeout < 0)
+            throw new IllegalArgumentException("Invalid timeout: " + timeout);
+        if (nshards < 1 || nshards > (1 << 16))
+            throw new IllegalArgumentException("Invalid shard count: " + nshards);
+        int n = Integer.highestOneBit(nshards - 1) << 1;
+        if (n == 0)
+            n = 1;
+        shards = new Shard[n];
+        int perShard = (capacity + n - 1) / n;
+        for (int i=0; i<n; i++)
+            shards[i] = new Shard(perShard);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Constructor, with a shard count suited to the number of processors.
+     * @param capacity    Maximum number of partial messages to hold.
+     * @param timeout     Milliseconds to wait for a message's remaining
+     *                    blocks before giving up on it.
+     */
+    public MessageReassembler(int capacity, long timeout) {
+        this(capacity, timeout, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    private Shard shardFor(String key) {
+        int h = key.hashCode();
+        return shards[(h ^ (h >>> 16)) & (shards.length - 1)];
+    }
+
+    /**
+     * Add a block. Partial messages that have timed out are quietly
+     * discarded as a side effect; call expire() periodically to retrieve
+     * them instead.
+     * @param block       The block; must have been successfully parsed.
+     * @param isLast      Whether this is the final block of its message.
+     * @param now         Current time, in milliseconds.
+     * @return            The reassembled message if this block completed
+     *                    one, else null. Single-block messages are returned
+     *                    as-is.
+     */
+    public IAcarsMessage add(IAcarsMessage block, boolean isLast, long now) {
+        String id = block.getMessageId();
+        if (id == null)
+            return isLast ? block : null;
+        String key = block.getRegistration() + id.substring(0, Integer.min(id.length(), PREFIX_LENGTH));
+        Shard shard = shardFor(key);
+        synchronized (shard) {
+            shard.expire(now - timeout, null);
+            Pending p = shard.get(key);
+            if (p == null) {
+                if (isLast)
+                    return block;
+                p = new Pending(now);
+                shard.put(key, p);
+            }
+            if (!p.add(block, isLast))
+                return null;
+            shard.remove(key);
+            return p.assemble();
+        }
+    }
+
+    /**
+     * Add a block. Whether it is the final one of its message is determined
+     * from how its frame was terminated.
+     * @param block       The block; must have been successfully parsed.
+     * @param now         Current time, in milliseconds.
+     * @return            The reassembled message if this block completed
+     *                    one, else null.
+     */
+    public IAcarsMessage add(AcarsMessage block, long now) {
+        return add(block, block.isFinalBlock(), now);
+    }
+
+    /**
+     * Evict all partial messages that have timed out.
+     * @param now         Current time, in milliseconds.
+     * @return            The evicted messages, each assembled from as many
+     *                    blocks as had arrived.
+     */
+    public List<IAcarsMessage> expire(long now) {
+        List<IAcarsMessage> ret = new ArrayList<IAcarsMessage>();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                shard.expire(now - timeout, ret);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Get the number of partial messages being held.
+     * @return            Count.
+     */
+    public int getPending() {
+        int ret = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                ret += shard.size();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Get the number of partial messages evicted, whether due to timeouts
+     * or to lack of space.
+     * @return            Count.
+     */
+    public long getEvicted() {
+        long ret = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                ret += shard.evicted;
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,181 @@
+package info.koosah.acarsutils;
+
+import java.nio.charset.Charset;
+
+/**
+ * The result of successfully parsing a raw ACARS message. Objects of this
+ * class are immutable, so they may be freely shared between threads
+ * without any locking.
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class ParsedAcarsMessage implements IAcarsMessage {
+    /* Character set the messages use. */
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    /* Runt packets shorter than this are not parseable. */
+    private static final int MIN_LENGTH = 13;
+
+    /* Ends all but the final block of a multi-block message. */
+    private static final char ETB = 0x17;
+
+    /* The only label that has a source. */
+    private static final int H1 = AcarsLabels.code("H1");
+
+    private final String registration;
+    public String getRegistration() {
+        return registration;
+    }
+
+    private final String flightId;
+    public String getFlightId() {
+        return flightId;
+    }
+
+    private final String label;
+    public String getLabel() {
+        return label;
+    }
+
+    /* the label as a primitive; see AcarsLabels */
+    private final int labelCode;
+    public int getLabelCode() {
+        return labelCode;
+    }
+
+    private final char mode;
+    public char getMode() {
+        return mode;
+    }
+
+    private final char blockId;
+    public char getBlockId() {
+        return blockId;
+    }
+
+    private final char acknowledge;
+    public char getAcknowledge() {
+        return acknowledge;
+    }
+
+    private final String messageId;
+    public String getMessageId() {
+        return messageId;
+    }
+
+    private final String source;
+    public String getSource() {
+        return source;
+    }
+
+    /* the source as a primitive; see AcarsLabels */
+    private final int sourceCode;
+    public int getSourceCode() {
+        return sourceCode;
+    }
+
+    private final String message;
+    public String getMessage() {
+        return message;
+    }
+
+    /* false if this block ended with ETB, i.e. more blocks follow */
+    private final boolean finalBlock;
+    public boolean isFinalBlock() {
+        return finalBlock;
+    }
+
+    /**
+     * The entire raw message, as a string.
+     */
+    private final String string;
+    public String getString() {
+        return string;
+    }
+
+    ParsedAcarsMessage(char mode, String registration, char acknowledge,
+            int labelCode, String label, char blockId, String messageId,
+            String flightId, int sourceCode, String source, String message,
+            boolean finalBlock, String string) {
+        this.mode = mode;
+        this.registration = registration;
+        this.acknowledge = acknowledge;
+        this.labelCode = labelCode;
+        this.label = label;
+        this.blockId = blockId;
+        this.messageId = messageId;
+        this.flightId = flightId;
+        this.sourceCode = sourceCode;
+        this.source = source;
+        this.message = message;
+        this.finalBlock = finalBlock;
+        this.string = string;
+    }
+
+    /**
+     * Parse a raw message (byte array version).
+     * @param raw         Byte array containing the raw message.
+     * @return            The parsed message, or null if it is unparseable.
+     */
+    public static ParsedAcarsMessage parse(byte[] raw) {
+        if (AsciiBytes.firstNonAscii(raw, 0, raw.length) >= 0)
+            return null;
+        return parseAscii(new String(raw, CHARSET));
+    }
+
+    /**
+     * Parse a raw message (string version).
+     * @param raw         String containing the raw message.
+     * @return            The parsed message, or null if it is unparseable.
+     */
+    public static ParsedAcarsMessage parse(String raw) {
+        int len = raw.length();
+        for (int i=0; i<len; i++) {
+            if (raw.charAt(i) > 127)
+                return null;
+        }
+        return parseAscii(raw);
+    }
+
+    private static ParsedAcarsMessage parseAscii(String string) {
+        /* runt packets are not parseable */
+        int len = string.length();
+        if (len < MIN_LENGTH)
+            return null;
+
+        /* parse */
+        char mode = string.charAt(0);
+        String registration = string.substring(1, 8);
+        char acknowledge = string.charAt(8);
+        int labelCode = AcarsLabels.code(string.charAt(9), string.charAt(10));
+        String label = AcarsLabels.label(labelCode);
+        if (label == null)
+            label = string.substring(9, 11);
+        char blockId = string.charAt(11);
+        char blockStart = string.charAt(12);
+        String messageId = null, flightId = null;
+        int k = 13;
+        if (blockStart != 3 && mode <= 'Z' && blockId <= '9') {
+            int end = Integer.min(len, k+4);
+            messageId = string.substring(k, end);
+            k = end;
+            end = Integer.min(len, k+6);
+            flightId = string.substring(k, end);
+            k = end;
+        }
+        String message = --len > k ? string.substring(k, len) : "";
+        String source = null;
+        int sourceCode = AcarsLabels.NONE;
+        if (labelCode == H1) {
+            int mesh = message.indexOf((int) '#');
+            if (mesh != -1 && mesh <= 3 && message.length() - mesh >= 3) {
+                sourceCode = AcarsLabels.code(message.charAt(mesh+1), message.charAt(mesh+2));
+                source = AcarsLabels.source(sourceCode);
+                if (source == null)
+                    source = message.substring(mesh+1, mesh+3);
+            }
+        }
+        return new ParsedAcarsMessage(mode, registration, acknowledge,
+            labelCode, label, blockId, messageId, flightId, sourceCode, source,
+            message, string.charAt(len) != ETB, string);
+    }
+}
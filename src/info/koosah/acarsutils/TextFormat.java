@@ -0,0 +1,118 @@
+package info.koosah.acarsutils;
+
+/**
+ * Formats timestamps and numbers into a StringBuilder, without the
+ * overhead of String.format or the thread-safety problems of a shared
+ * SimpleDateFormat. Everything here is static and keeps no state, so it
+ * may be used by any number of threads at once.
+ *
+ * Output matches what String.format and SimpleDateFormat would produce
+ * for the same value, so switching to these methods changes nothing.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class TextFormat {
+    /* not intended to be instantiated */
+    private TextFormat() {}
+
+    private static final long MS_PER_DAY = 86400000L;
+    private static final long[] POW10 = { 1L, 10L, 100L, 1000L, 10000L,
+        100000L, 1000000L, 10000000L, 100000000L, 1000000000L };
+
+    /* append a non-negative number, zero-padded to a given width */
+    private static void pad(StringBuilder sb, long n, int width) {
+        for (int i=width-1; i>0 && n < POW10[i]; i--)
+            sb.append('0');
+        sb.append(n);
+    }
+
+    /**
+     * Append a time as an ISO-8601 UTC timestamp of the form
+     * yyyy-MM-ddTHH:mm:ssZ, with fractions of a second dropped.
+     * @param sb          Where to append it.
+     * @param millis      Time, in milliseconds since the epoch.
+     * @return            The StringBuilder.
+     */
+    public static StringBuilder appendTimestamp(StringBuilder sb, long millis) {
+        long days = Math.floorDiv(millis, MS_PER_DAY);
+        int secs = (int) (Math.floorMod(millis, MS_PER_DAY) / 1000L);
+
+        /* days since the epoch to a civil date; see H. Hinnant,
+           "chrono-Compatible Low-Level Date Algorithms" */
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long day = doy - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        pad(sb, year, 4);
+        sb.append('-');
+        pad(sb, month, 2);
+        sb.append('-');
+        pad(sb, day, 2);
+        sb.append('T');
+        pad(sb, secs / 3600, 2);
+        sb.append(':');
+        pad(sb, secs / 60 % 60, 2);
+        sb.append(':');
+        pad(sb, secs % 60, 2);
+        return sb.append('Z');
+    }
+
+    /**
+     * Append a number with a fixed number of decimal places, rounded the
+     * way String.format("%.Nf") rounds it: half up, based on the shortest
+     * decimal string that represents the value.
+     * @param sb          Where to append it.
+     * @param value       Value.
+     * @param places      Number of decimal places, 0 to 9.
+     * @return            The StringBuilder.
+     */
+    public static StringBuilder appendFixed(StringBuilder sb, double value, int places) {
+        if (places < 0 || places >= POW10.length)
+            throw new IllegalArgumentException("Invalid number of places: " + places);
+        if (Double.isNaN(value))
+            return sb.append("NaN");
+        if (Double.doubleToRawLongBits(value) < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        long scale = POW10[places];
+        if (Double.isInfinite(value) || value * scale >= 1e15)
+            return sb.append(String.format("%." + places + "f", value));
+
+        /* Decide which way to round by comparing the value to the halfway
+           point; if the halfway point is the value (i.e. the value's
+           shortest representation ends in 5), round up. */
+        long n = (long) Math.floor(value * scale);
+        double half = (2 * n + 1) / (2.0 * scale);
+        if (value >= half)
+            n++;
+
+        sb.append(n / scale);
+        if (places > 0) {
+            sb.append('.');
+            pad(sb, n % scale, places);
+        }
+        return sb;
+    }
+
+    /**
+     * Append a number that may be null. Like String.format, a null is
+     * written as "null" truncated to the number of places (so "%.1f"
+     * turns it into just "n").
+     * @param sb          Where to append it.
+     * @param value       Value, or null.
+     * @param places      Number of decimal places, 0 to 9.
+     * @return            The StringBuilder.
+     */
+    public static StringBuilder appendFixed(StringBuilder sb, Number value, int places) {
+        if (value == null)
+            return sb.append("null", 0, Math.min(places, 4));
+        return appendFixed(sb, value.doubleValue(), places);
+    }
+}
@@ -0,0 +1,326 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.ToLongFunction;
+import info.koosah.acarsutils.FlyweightAcarsMessage;
+import info.koosah.acarsutils.IAcarsMessage;
+
+/**
+ * Decodes large numbers of messages (e.g. a day's archive) in parallel.
+ * Messages are read in windows, each window is split into runs of
+ * consecutive messages, and each run is decoded on its own thread into
+ * its own ObservationBatch. Each message goes to the shared decoder for
+ * its flight ID; messages with no flight ID, or from airlines we have no
+ * decoder for, are skipped. The results are then merged, so observations
+ * come out in the same order a single thread would have produced them.
+ * The next window is read, and its runs started, while the previous one
+ * is still being decoded and merged.
+ *
+ * Messages are therefore decoded some time after the iterator returns
+ * them, on other threads, so they must not be changed or reused once
+ * returned. The exception is FlyweightAcarsMessage, which is meant to be
+ * re-pointed at each message in turn (e.g. by CaretReader): each one's
+ * frame is copied as it is read, and the copy is what gets decoded.
+ *
+ * Runs may be executed by a fork-join pool or, where the JVM supports
+ * them (Java 21 on, or 19 and 20 with --enable-preview), by virtual
+ * threads. These are looked up and tried once at run time, so this class
+ * still works on JVMs without them, falling back on a fork-join pool.
+ * Either way, no more than the parallelism's worth of runs are decoded at
+ * once.
+ *
+ * A message the decoder rejects with an IllegalArgumentException (e.g.
+ * one too far from the base time to resolve its timestamps) contributes
+ * no observations, and does not stop the rest from being decoded; see
+ * WxDecoder.decode. Decoders keep no state, so any number of batches may
+ * be decoded at once; the executor should be shut down with close() when
+ * no longer needed.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class BatchDecoder implements AutoCloseable {
+    /**
+     * Kinds of executors.
+     */
+    public enum Mode { FORK_JOIN, VIRTUAL_THREADS }
+
+    /* Messages per run, and runs per window per unit of parallelism. */
+    private static final int RUN = 1024;
+    private static final int RUNS_PER_THREAD = 4;
+
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    /* Limits the runs decoded at once, if the executor does not. */
+    private final Semaphore permits;
+
+    /**
+     * Constructor. Uses a fork-join pool with one thread per processor.
+     */
+    public BatchDecoder() {
+        this(Runtime.getRuntime().availableProcessors(), Mode.FORK_JOIN);
+    }
+
+    /**
+     * Constructor.
+     * @param parallelism Number of runs of messages to decode at once.
+     * @param mode        What sort of executor to decode them with.
+     * @throws IllegalArgumentException If the parallelism is less than 1.
+     */
+    public BatchDecoder(int parallelism, Mode mode) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        if (mode == null)
+            throw new IllegalArgumentException("Mode must not be null.");
+        this.parallelism = parallelism;
+        ExecutorService e = mode == Mode.VIRTUAL_THREADS ? virtualThreads() : null;
+        executor = e == null ? new ForkJoinPool(parallelism) : e;
+        permits = e == null ? null : new Semaphore(parallelism);
+    }
+
+    /**
+     * Whether this JVM has virtual threads.
+     * @return            True if Mode.VIRTUAL_THREADS will use them.
+     */
+    public static boolean virtualThreadsAvailable() {
+        return VIRTUAL_THREADS != null;
+    }
+
+    private static final Method VIRTUAL_THREADS = virtualThreadFactory();
+
+    /* The factory method exists from Java 19 on, but only works without
+       --enable-preview from Java 21 on, so try it once to be sure. */
+    private static Method virtualThreadFactory() {
+        try {
+            Method ret = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ((ExecutorService) ret.invoke(null)).shutdown();
+            return ret;
+        } catch (ReflectiveOperationException|RuntimeException e) {
+            return null;
+        }
+    }
+
+    /* get a virtual-thread executor, or null if there are none */
+    private static ExecutorService virtualThreads() {
+        if (VIRTUAL_THREADS == null)
+            return null;
+        try {
+            return (ExecutorService) VIRTUAL_THREADS.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the parallelism.
+     * @return            Most runs decoded at once.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /* Decodes a run of messages. */
+    private static final class Run implements Callable<ObservationBatch> {
+        private final IAcarsMessage[] messages;
+        private final int start, end;
+        private final ToLongFunction<? super IAcarsMessage> baseTime;
+        private final Semaphore permits;
+        int recognized;
+
+        Run(IAcarsMessage[] messages, int start, int end,
+                ToLongFunction<? super IAcarsMessage> baseTime, Semaphore permits) {
+            this.messages = messages;
+            this.start = start;
+            this.end = end;
+            this.baseTime = baseTime;
+            this.permits = permits;
+        }
+
+        public ObservationBatch call() throws InterruptedException {
+            if (permits == null)
+                return decode();
+            permits.acquire();
+            try {
+                return decode();
+            } finally {
+                permits.release();
+            }
+        }
+
+        private ObservationBatch decode() {
+            ObservationBatch batch = new ObservationBatch();
+            for (int i=start; i<end; i++) {
+                IAcarsMessage m = messages[i];
+                String flight = m.getFlightId();
+                if (flight == null)
+                    continue;
+                WxDecoder decoder;
+                try {
+                    decoder = WxDecoder.sharedForName(flight);
+                } catch (WxDecoder.UnknownAirlineException|IllegalArgumentException e) {
+                    continue;
+                }
+                long base = baseTime.applyAsLong(m);
+                try {
+                    if (decoder.decode(m, base, batch))
+                        recognized++;
+                } catch (IllegalArgumentException e) {
+                    /* rejected, so nothing was added to the batch */
+                }
+            }
+            return batch;
+        }
+    }
+
+    /**
+     * Decode messages, passing the observations to a sink in the order a
+     * single thread would have. The sink is only called by the thread
+     * calling this method. The messages may come from a stream, if passed
+     * as stream::iterator.
+     * @param messages    Messages to decode.
+     * @param baseTime    Gets the base time to decode each message against,
+     *                    in milliseconds since the epoch.
+     * @param sink        Where to send the observations.
+     * @return            Number of messages recognized as observations.
+     * @throws InterruptedException If interrupted while waiting for the
+     *                    decoding to finish.
+     */
+    public long decode(Iterable<? extends IAcarsMessage> messages,
+            ToLongFunction<? super IAcarsMessage> baseTime, ObservationSink sink)
+            throws InterruptedException {
+        /* two windows: one being read while the other is decoded */
+        int size = RUN * RUNS_PER_THREAD * parallelism;
+        IAcarsMessage[] reading = new IAcarsMessage[size], decoding = new IAcarsMessage[size];
+        List<Run> runs = new ArrayList<Run>(), nextRuns = new ArrayList<Run>();
+        List<Future<ObservationBatch>> results = new ArrayList<Future<ObservationBatch>>(),
+            nextResults = new ArrayList<Future<ObservationBatch>>();
+        long recognized = 0;
+        Iterator<? extends IAcarsMessage> it = messages.iterator();
+        try {
+            start(decoding, fill(decoding, it), baseTime, runs, results);
+            while (!runs.isEmpty()) {
+                start(reading, fill(reading, it), baseTime, nextRuns, nextResults);
+                for (int i=0; i<runs.size(); i++) {
+                    replay(results.get(i), sink);
+                    recognized += runs.get(i).recognized;
+                }
+                IAcarsMessage[] w = reading;
+                reading = decoding;
+                decoding = w;
+                List<Run> r = runs;
+                runs = nextRuns;
+                nextRuns = r;
+                nextRuns.clear();
+                List<Future<ObservationBatch>> f = results;
+                results = nextResults;
+                nextResults = f;
+                nextResults.clear();
+            }
+        } finally {
+            cancel(results);
+            cancel(nextResults);
+        }
+        return recognized;
+    }
+
+    /* read up to a window's worth of messages, returning how many */
+    private static int fill(IAcarsMessage[] window, Iterator<? extends IAcarsMessage> it) {
+        int n = 0;
+        while (n < window.length && it.hasNext()) {
+            IAcarsMessage m = it.next();
+            window[n++] = m instanceof FlyweightAcarsMessage ? copy((FlyweightAcarsMessage) m) : m;
+        }
+        return n;
+    }
+
+    /* flyweights (and often their buffers) get re-pointed at the next
+       message as soon as we ask for it, so keep a copy of the frame */
+    private static FlyweightAcarsMessage copy(FlyweightAcarsMessage m) {
+        FlyweightAcarsMessage ret = new FlyweightAcarsMessage();
+        if (m.getBuffer() != null) {
+            int off = m.getFrameOffset();
+            ret.wrap(Arrays.copyOfRange(m.getBuffer(), off, off + m.getFrameLength()));
+        }
+        return ret;
+    }
+
+    /* split a window into runs and start decoding them */
+    private void start(IAcarsMessage[] window, int n, ToLongFunction<? super IAcarsMessage> baseTime,
+            List<Run> runs, List<Future<ObservationBatch>> results) {
+        for (int i=0; i<n; i+=RUN) {
+            Run run = new Run(window, i, Math.min(n, i + RUN), baseTime, permits);
+            runs.add(run);
+            results.add(executor.submit(run));
+        }
+    }
+
+    /* wait for a run to finish, then pass on its observations */
+    private static void replay(Future<ObservationBatch> result, ObservationSink sink)
+            throws InterruptedException {
+        try {
+            result.get().replay(sink);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /* stop any runs still going, e.g. after a failure */
+    private static void cancel(List<Future<ObservationBatch>> results) {
+        for (Future<ObservationBatch> f : results)
+            f.cancel(true);
+    }
+
+    /**
+     * Decode messages, all against the same base time; see above.
+     * @param messages    Messages to decode.
+     * @param baseTime    Absolute time to base any relative timestamps on,
+     *                    in milliseconds since the epoch.
+     * @param sink        Where to send the observations.
+     * @return            Number of messages recognized as observations.
+     * @throws InterruptedException If interrupted while waiting for the
+     *                    decoding to finish.
+     */
+    public long decode(Iterable<? extends IAcarsMessage> messages, long baseTime,
+            ObservationSink sink) throws InterruptedException {
+        return decode(messages, m -> baseTime, sink);
+    }
+
+    /**
+     * Decode messages into a batch of observations; see above.
+     * @param messages    Messages to decode.
+     * @param baseTime    Absolute time to base any relative timestamps on,
+     *                    in milliseconds since the epoch.
+     * @return            Observations, in order.
+     * @throws InterruptedException If interrupted while waiting for the
+     *                    decoding to finish.
+     */
+    public ObservationBatch decode(Iterable<? extends IAcarsMessage> messages, long baseTime)
+            throws InterruptedException {
+        ObservationBatch ret = new ObservationBatch();
+        decode(messages, baseTime, ret);
+        return ret;
+    }
+
+    /**
+     * Shut down the executor, once any decoding in progress is done.
+     */
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,184 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import info.koosah.acarsutils.AcarsObservation;
+import info.koosah.acarsutils.FakeAcarsMessage;
+import info.koosah.acarsutils.FlyweightAcarsMessage;
+import info.koosah.acarsutils.IAcarsMessage;
+
+/**
+ * Tests for decoding messages in parallel.
+ */
+public class BatchDecoderTest {
+    private static List<IAcarsMessage> traffic(int n) {
+        TrafficGenerator g = new TrafficGenerator(99L);
+        List<IAcarsMessage> ret = new ArrayList<IAcarsMessage>(n);
+        for (int i=0; i<n; i++)
+            ret.add(g.next());
+        return ret;
+    }
+
+    /* decode the old way, one at a time */
+    private static ObservationBatch serial(List<IAcarsMessage> messages, long baseTime, long[] recognized) throws Exception {
+        ObservationBatch ret = new ObservationBatch();
+        for (IAcarsMessage m : messages) {
+            try {
+                if (WxDecoder.sharedForName(m.getFlightId()).decode(m, baseTime, ret))
+                    recognized[0]++;
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+        }
+        return ret;
+    }
+
+    private static void assertSame(ObservationBatch expected, ObservationBatch actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i=0; i<expected.size(); i++) {
+            AcarsObservation e = expected.toObservation(i), a = actual.toObservation(i);
+            assertTrue(e + " != " + a, e.equals(a));
+        }
+    }
+
+    @Test
+    public void matchesSerialDecoding() throws Exception {
+        List<IAcarsMessage> messages = traffic(20000);
+        long base = new TrafficGenerator(0L).getBaseTime();
+        long[] recognized = new long[1];
+        ObservationBatch expected = serial(messages, base, recognized);
+        assertTrue(expected.size() > 20000);
+
+        for (int parallelism : new int[] { 1, 3, 8 }) {
+            for (BatchDecoder.Mode mode : BatchDecoder.Mode.values()) {
+                try (BatchDecoder d = new BatchDecoder(parallelism, mode)) {
+                    assertEquals(parallelism, d.getParallelism());
+                    assertSame(expected, d.decode(messages, base));
+                    ObservationBatch got = new ObservationBatch();
+                    assertEquals(recognized[0], d.decode(messages, base, got));
+                    assertSame(expected, got);
+
+                    /* streams work too */
+                    got.clear();
+                    d.decode(messages.stream()::iterator, base, got);
+                    assertSame(expected, got);
+                }
+            }
+        }
+    }
+
+    /* a raw frame, as it would come off the air minus the SOH */
+    private static byte[] frame(IAcarsMessage m) {
+        String s = m.getMode() + m.getRegistration() + m.getAcknowledge() + m.getLabel()
+            + m.getBlockId() + "\u0002" + m.getMessageId() + m.getFlightId() + m.getMessage() + "\u0003";
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void copiesReusedFlyweights() throws Exception {
+        TrafficGenerator g = new TrafficGenerator(7L).setWeight(TrafficGenerator.Kind.ACK, 0)
+            .setWeight(TrafficGenerator.Kind.NON_OBSERVATION, 0);
+        List<byte[]> frames = new ArrayList<byte[]>();
+        List<IAcarsMessage> copies = new ArrayList<IAcarsMessage>();
+        for (int i=0; i<5000; i++) {
+            byte[] f = frame(g.next());
+            FlyweightAcarsMessage m = new FlyweightAcarsMessage();
+            assertTrue(m.wrap(f));
+            frames.add(f);
+            copies.add(m);
+        }
+        long base = g.getBaseTime();
+        long[] recognized = new long[1];
+        ObservationBatch expected = serial(copies, base, recognized);
+        assertTrue(expected.size() > 5000);
+
+        /* like CaretReader: one flyweight, and one buffer, for everything */
+        Iterable<IAcarsMessage> reused = () -> new Iterator<IAcarsMessage>() {
+            private final FlyweightAcarsMessage m = new FlyweightAcarsMessage();
+            private final byte[] buf = new byte[1024];
+            private int i = 0;
+            public boolean hasNext() {
+                return i < frames.size();
+            }
+            public IAcarsMessage next() {
+                byte[] f = frames.get(i++);
+                System.arraycopy(f, 0, buf, 0, f.length);
+                m.wrap(buf, 0, f.length);
+                return m;
+            }
+        };
+        try (BatchDecoder d = new BatchDecoder(1, BatchDecoder.Mode.FORK_JOIN)) {
+            ObservationBatch got = new ObservationBatch();
+            assertEquals(recognized[0], d.decode(reused, base, got));
+            assertSame(expected, got);
+        }
+    }
+
+    @Test
+    public void boundsParallelism() throws Exception {
+        List<IAcarsMessage> messages = traffic(20000);
+        long base = new TrafficGenerator(0L).getBaseTime();
+        AtomicInteger active = new AtomicInteger(), most = new AtomicInteger();
+        AtomicBoolean virtual = new AtomicBoolean();
+        for (BatchDecoder.Mode mode : BatchDecoder.Mode.values()) {
+            most.set(0);
+            virtual.set(false);
+            try (BatchDecoder d = new BatchDecoder(2, mode)) {
+                d.decode(messages, m -> {
+                    most.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    if (Thread.currentThread().getClass().getName().equals("java.lang.VirtualThread"))
+                        virtual.set(true);
+                    Thread.yield();
+                    active.decrementAndGet();
+                    return base;
+                }, new ObservationBatch());
+            }
+            assertTrue(mode + ": " + most.get(), most.get() >= 1 && most.get() <= 2);
+
+            /* virtual threads get used exactly when they are said to be
+               available (which takes Java 21 or later to test) */
+            assertEquals(mode == BatchDecoder.Mode.VIRTUAL_THREADS && BatchDecoder.virtualThreadsAvailable(),
+                virtual.get());
+        }
+    }
+
+    @Test
+    public void skipsUndecodable() throws Exception {
+        long base = new TrafficGenerator(0L).getBaseTime();
+        FakeAcarsMessage good = (FakeAcarsMessage) traffic(1).get(0);
+        TrafficGenerator g = new TrafficGenerator(5L).setWeight(TrafficGenerator.Kind.RUNT, 0)
+            .setWeight(TrafficGenerator.Kind.NON_OBSERVATION, 0).setWeight(TrafficGenerator.Kind.ACK, 0);
+        for (String a : TrafficGenerator.AIRLINES)
+            g.setWeight(a, a.equals("AS") ? 1 : 0);
+        FakeAcarsMessage alaska = g.next();
+
+        /* unknown airlines and missing flight IDs get skipped, and Alaska
+           observations a week away can't be resolved */
+        List<IAcarsMessage> messages = new ArrayList<IAcarsMessage>();
+        messages.add(alaska.clone().setFlightId("ZZ0001"));
+        messages.add(alaska.clone().setFlightId(null));
+        messages.add(alaska);
+        messages.add(good);
+        try (BatchDecoder d = new BatchDecoder()) {
+            ObservationBatch got = new ObservationBatch();
+            long n = d.decode(messages, m -> m == alaska ? base + 7 * TimeWindow.DAY : base, got);
+            long[] recognized = new long[1];
+            ObservationBatch expected = serial(messages.subList(3, 4), base, recognized);
+            assertEquals(recognized[0], n);
+            assertSame(expected, got);
+        }
+
+        try {
+            new BatchDecoder(0, BatchDecoder.Mode.FORK_JOIN);
+            fail("zero parallelism accepted");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
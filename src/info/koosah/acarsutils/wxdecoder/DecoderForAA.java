@@ -1,12 +1,5 @@
 package info.koosah.acarsutils.wxdecoder;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import info.koosah.acarsutils.*;
 
 /**
@@ -15,42 +8,59 @@ import info.koosah.acarsutils.*;
  * @author David Barts <n5jrn@me.com>
  */
 public class DecoderForAA extends WxDecoder {
-    private static final TimeZone ZONE = TimeZone.getTimeZone("GMT");
-
-    private GregorianCalendar[] daysToTry;
     private static final String PREFIX = "#DFBA3";
     private static final int PRE_LENGTH = 22;
     private static final int OBS_LENGTH = 32;
-    private static final Pattern AA_PRE = Pattern.compile("#DFBA3.{2}\\d{6}[A-Z]{3}[A-Z ][A-Z]{3}[A-Z ]");
-    private static final Pattern AA_OBS = Pattern.compile("[NS]\\d{5}[EW]\\d{10}[PM]\\d{9}[A-Z]\\d{4}");
+    private static final FixedFormat AA_PRE = new FixedFormat.Builder()
+        .literal(PREFIX).any(2).field("time", "999999")
+        .oneOf(FixedFormat.UPPER, 3).oneOf(FixedFormat.UPPER + " ", 1)
+        .oneOf(FixedFormat.UPPER, 3).oneOf(FixedFormat.UPPER + " ", 1)
+        .build();
+    private static final FixedFormat AA_OBS = new FixedFormat.Builder()
+        .sign("lat", "N", "S").field("lat", "99999", 1000.0)
+        .sign("lon", "E", "W").field("lon", "999999", 1000.0)
+        .field("alt", "9999")
+        .sign("temp", "P", "M").field("temp", "99")
+        .digits(1).field("dir", "999").field("speed", "999")
+        .oneOf(FixedFormat.UPPER, 1).digits(4)
+        .build();
+    private static final FixedFormat.Field TIME = AA_PRE.field("time");
+    private static final FixedFormat.Field LAT = AA_OBS.field("lat");
+    private static final FixedFormat.Field LON = AA_OBS.field("lon");
+    private static final FixedFormat.Field ALT = AA_OBS.field("alt");
+    private static final FixedFormat.Field TEMP = AA_OBS.field("temp");
+    private static final FixedFormat.Field DIR = AA_OBS.field("dir");
+    private static final FixedFormat.Field SPEED = AA_OBS.field("speed");
 
     /**
      * Decode something.
      * @param message     An AcarsMessage.
-     * @return            An Iterable<AcarsObservation>, or null
+     * @param baseTime    Absolute time to base any relative timestamps on.
+     * @param sink        Where to send the observations.
+     * @return            True if this is a weather observation message.
      */
-    public Iterable<AcarsObservation> decode(IAcarsMessage message, Date baseTime) {
+    protected boolean decodeReports(IAcarsMessage message, long baseTime, ObservationSink sink) {
         // American uses H1 messages that start with a specific prefix for
         // their weather reports.
         if (!message.getLabel().equals("H1") || !message.getMessage().startsWith(PREFIX))
-            return null;
+            return false;
 
         // Get message length and verify it's more than just a bare preamble.
         int len = message.getMessage().length();
         if (len <= PRE_LENGTH)
-            return null;
+            return false;
 
         // Get preamble, verify it looks valid, then get time stamp from it.
         // The time *may* be bad in a "fooler" message.
-        String preamble = message.getMessage().substring(0, PRE_LENGTH);
-        if (!AA_PRE.matcher(preamble).matches())
-            return null;
-        initBase(baseTime);
-        Date date = null;
+        String body = message.getMessage();
+        if (!AA_PRE.matches(body, 0, PRE_LENGTH))
+            return false;
+        TimeWindow.Daily daysToTry = TimeWindow.Daily.forBase(baseTime);
+        long date;
         try {
-            date = parseTime(preamble.substring(8, 14));
+            date = parseTime(daysToTry, TIME.intValue(body, 0, PRE_LENGTH));
         } catch (IllegalArgumentException e) {
-            return null;
+            return false;
         }
 
         // Throw out the initial preamble and remove any \r or \n
@@ -68,67 +78,33 @@ public class DecoderForAA extends WxDecoder {
         // observation. Note that an occasional message looks a lot at first
         // like observations, but isn't, so we do pattern matching to verify.
         boolean found = false;
-        ArrayList<AcarsObservation> ret = new ArrayList<AcarsObservation>();
         int nobs = buf.length() / OBS_LENGTH;
         for (int i = 0; i < nobs; i++) {
-            String raw = buf.substring(i * OBS_LENGTH, (i + 1) * OBS_LENGTH);
-            if (!AA_OBS.matcher(raw).matches())
+            int start = i * OBS_LENGTH, end = start + OBS_LENGTH;
+            if (!AA_OBS.matches(buf, start, end))
                 continue;
-            AcarsObservation obs = makeObs(date, raw);
-            if (obs != null) {
-                found = true;
-                ret.add(obs);
-            }
+            makeObs(date, buf, start, end, sink);
+            found = true;
         }
 
-        return found ? ret : null;
+        return found;
     }
 
-    private AcarsObservation makeObs(Date observed, String line) {
+    private static void makeObs(long observed, CharSequence line, int start, int end, ObservationSink sink) {
         // Get the basic four coordinates of the observation. These will always
         // be present.
-        double sign = line.charAt(0) == 'N' ? 1.0 : -1.0;
-        double latitude = sign * Double.parseDouble(line.substring(1, 6)) / 1000.0;
-        sign = line.charAt(6) == 'E' ? 1.0 : -1.0;
-        double longitude = sign * Double.parseDouble(line.substring(7, 13)) / 1000.0;
-        int altitude = Integer.parseInt(line.substring(13, 17)) * 10;
-
-        // Build the base object.
-        AcarsObservation ret = new AcarsObservation(latitude, longitude, altitude, observed);
-
-        // Temperature.
-        float tsign = line.charAt(17) == 'P' ? 1.0f : -1.0f;
-        ret.setTemperature(tsign * Float.parseFloat(line.substring(18, 20)));
-
-        // Wind direction and speed
-        ret.setWindDirection(Short.parseShort(line.substring(21, 24)));
-        ret.setWindSpeed(Short.parseShort(line.substring(24, 27)));
-        return ret;
-    }
-
-    private void initBase(Date baseTime) {
-        GregorianCalendar today = new GregorianCalendar(ZONE);
-        today.setTime(baseTime);
-        today.set(GregorianCalendar.SECOND, 0);
-        today.set(GregorianCalendar.MILLISECOND, 0);
-        GregorianCalendar yesterday = (GregorianCalendar) today.clone();
-        yesterday.add(GregorianCalendar.DATE, -1);
-        GregorianCalendar tomorrow = (GregorianCalendar) today.clone();
-        tomorrow.add(GregorianCalendar.DATE, 1);
-        daysToTry = new GregorianCalendar[] { today, yesterday, tomorrow };
+        double latitude = LAT.doubleValue(line, start, end);
+        double longitude = LON.doubleValue(line, start, end);
+        int altitude = ALT.intValue(line, start, end) * 10;
+
+        // Temperature, wind direction and speed.
+        sink.observe(observed, latitude, longitude, altitude,
+            TEMP.floatValue(line, start, end),
+            DIR.intValue(line, start, end),
+            SPEED.intValue(line, start, end));
     }
 
-    private Date parseTime(String ddhhmm) {
-        int dd = Integer.parseInt(ddhhmm.substring(0, 2));
-        int hh = Integer.parseInt(ddhhmm.substring(2, 4));
-        int mm = Integer.parseInt(ddhhmm.substring(4, 6));
-        for (GregorianCalendar day : daysToTry)
-            if (dd == day.get(GregorianCalendar.DAY_OF_MONTH)) {
-                GregorianCalendar ret = (GregorianCalendar) day.clone();
-                ret.set(GregorianCalendar.MINUTE, mm);
-                ret.set(GregorianCalendar.HOUR_OF_DAY, hh);
-                return ret.getTime();
-            }
-        throw new IllegalArgumentException("Observation not within 24 hrs of base time");
+    private static long parseTime(TimeWindow.Daily daysToTry, int ddhhmm) {
+        return daysToTry.resolve(ddhhmm / 10000, ddhhmm / 100 % 100, ddhhmm % 100);
     }
 }
@@ -1,12 +1,5 @@
 package info.koosah.acarsutils.wxdecoder;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import info.koosah.acarsutils.*;
 
 /**
@@ -15,84 +8,72 @@ import info.koosah.acarsutils.*;
  * @author David Barts <n5jrn@me.com>
  */
 public class DecoderForAC extends WxDecoder {
-    private static final TimeZone ZONE = TimeZone.getTimeZone("GMT");
-
-    private GregorianCalendar[] daysToTry;
     private static final int LENGTH = 116;
-    private static final Pattern PREFIX = Pattern.compile("AGFSR [A-Z]{2}\\d{4}/\\d{2}/\\d{2}/\\w{6}/\\d{4}Z/\\d{3}/\\d{4}\\.\\d[NS]\\d{5}\\.\\d[EW]/\\d{3}/");
+    private static final FixedFormat FORMAT = new FixedFormat.Builder()
+        .literal("AGFSR ").oneOf(FixedFormat.UPPER, 2).digits(4).literal("/")
+        .digits(2).literal("/").field("day", "99").literal("/")
+        .oneOf(FixedFormat.WORD, 6).literal("/").field("time", "9999").literal("Z/")
+        .digits(3).literal("/")
+        .field("lat", "9999.9", 100.0).sign("lat", "N", "S")
+        .field("lon", "99999.9", 100.0).sign("lon", "E", "W").literal("/")
+        .field("alt", "999").literal("/")
+        .truncate()
+        .any(17).sign("temp", null, "M").field("temp", "99").any(1)
+        .field("dir", "999").field("speed", "999")
+        .build();
+    private static final FixedFormat.Field DAY = FORMAT.field("day");
+    private static final FixedFormat.Field TIME = FORMAT.field("time");
+    private static final FixedFormat.Field LAT = FORMAT.field("lat");
+    private static final FixedFormat.Field LON = FORMAT.field("lon");
+    private static final FixedFormat.Field ALT = FORMAT.field("alt");
+    private static final FixedFormat.Field TEMP = FORMAT.field("temp");
+    private static final FixedFormat.Field DIR = FORMAT.field("dir");
+    private static final FixedFormat.Field SPEED = FORMAT.field("speed");
 
     /**
      * Decode something.
      * @param message     An AcarsMessage.
-     * @return            An Iterable<AcarsObservation>, or null
+     * @param baseTime    Absolute time to base any relative timestamps on.
+     * @param sink        Where to send the observations.
+     * @return            True if this is a weather observation message.
      */
-    public Iterable<AcarsObservation> decode(IAcarsMessage message, Date baseTime) {
+    protected boolean decodeReports(IAcarsMessage message, long baseTime, ObservationSink sink) {
         // Air Canada uses 4T messages that start with a specific prefix for
         // their weather reports. 4T is not a documented ACARS message type.
         // AC seems fond of these. Oh well.
         String body = message.getMessage();
         int bl = body.trim().length();
         if (!message.getLabel().equals("4T") || bl != LENGTH) {
-            return null;
+            return false;
         }
-        if (!PREFIX.matcher(body).lookingAt()) {
-            return null;
+        int length = body.length();
+        if (!FORMAT.matchesPartial(body, 0, length)) {
+            return false;
         }
 
         // Get date/time stamp
-        initBase(baseTime);
-        Date date = null;
+        TimeWindow.Daily daysToTry = TimeWindow.Daily.forBase(baseTime);
+        long date;
         try {
-            String dd = body.substring(16, 18);
-            String hhmm = body.substring(26, 30);
-            date = parseTime(dd, hhmm);
+            date = parseTime(daysToTry, DAY.intValue(body, 0, length), TIME.intValue(body, 0, length));
         } catch (IllegalArgumentException e) {
-            return null;
+            return false;
         }
 
         // Lat/long/alt
-        double sign = body.charAt(42) == 'N' ? 1.0 : -1.0;
-        double latitude = sign * Double.parseDouble(body.substring(36, 42)) / 100.0;
-        sign = body.charAt(50) == 'E' ? 1.0 : -1.0;
-        double longitude = sign * Double.parseDouble(body.substring(43, 50)) / 100.0;
-        int altitude = Integer.parseInt(body.substring(52, 55)) * 100;
+        double latitude = LAT.doubleValue(body, 0, length);
+        double longitude = LON.doubleValue(body, 0, length);
+        int altitude = ALT.intValue(body, 0, length) * 100;
 
         // Optional stuff
-        AcarsObservation o = new AcarsObservation(latitude, longitude, altitude, date);
-        float tsign = body.charAt(73) == 'M' ? -1.0f : 1.0f;
-        o.setTemperature(tsign * Float.parseFloat(body.substring(74, 76)));
-        o.setWindDirection(Short.parseShort(body.substring(77, 80)));
-        o.setWindSpeed(Short.parseShort(body.substring(80, 83)));
-
-        // We must return an Iterable
-        ArrayList<AcarsObservation> ret = new ArrayList<AcarsObservation>(1);
-        ret.add(o);
-        return ret;
-    }
-
-    private void initBase(Date baseTime) {
-        GregorianCalendar today = new GregorianCalendar(ZONE);
-        today.setTime(baseTime);
-        today.set(GregorianCalendar.SECOND, 0);
-        today.set(GregorianCalendar.MILLISECOND, 0);
-        GregorianCalendar yesterday = (GregorianCalendar) today.clone();
-        yesterday.add(GregorianCalendar.DATE, -1);
-        GregorianCalendar tomorrow = (GregorianCalendar) today.clone();
-        tomorrow.add(GregorianCalendar.DATE, 1);
-        daysToTry = new GregorianCalendar[] { today, yesterday, tomorrow };
+        sink.observe(date, latitude, longitude, altitude,
+            TEMP.floatValue(body, 0, length),
+            DIR.intValue(body, 0, length),
+            SPEED.intValue(body, 0, length));
+        return true;
     }
 
-    private Date parseTime(String rawDd, String hhmm) {
-        int dd = Integer.parseInt(rawDd);
-        int hh = Integer.parseInt(hhmm.substring(0, 2));
-        int mm = Integer.parseInt(hhmm.substring(2, 4));
-        for (GregorianCalendar day : daysToTry)
-            if (dd == day.get(GregorianCalendar.DAY_OF_MONTH)) {
-                GregorianCalendar ret = (GregorianCalendar) day.clone();
-                ret.set(GregorianCalendar.MINUTE, mm);
-                ret.set(GregorianCalendar.HOUR_OF_DAY, hh);
-                return ret.getTime();
-            }
-        throw new IllegalArgumentException("Observation not within 24 hrs of base time");
+    private static long parseTime(TimeWindow.Daily daysToTry, int dd, int hhmm) {
+        return daysToTry.resolve(dd, hhmm / 100, hhmm % 100);
     }
 }
@@ -1,13 +1,5 @@
 package info.koosah.acarsutils.wxdecoder;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import info.koosah.acarsutils.*;
 
 /**
@@ -16,112 +8,86 @@ import info.koosah.acarsutils.*;
  * @author David Barts <n5jrn@me.com>
  */
 public class DecoderForDL extends WxDecoder {
-    private static final TimeZone ZONE = TimeZone.getTimeZone("GMT");
-
-    private HashMap<Integer,GregorianCalendar> hours;
-    private static final Pattern FULL    = Pattern.compile("[NS]\\d{5}[EW]\\d{14}[MP]\\d{2}.\\d{6}.{14}");
-    private static final Pattern PARTIAL = Pattern.compile("[NS]\\d{5}[EW]\\d{14}[MP]\\d{2}");
+    private static final FixedFormat FORMAT = new FixedFormat.Builder()
+        .sign("lat", "N", "S").field("lat", "99999", 1000.0)
+        .sign("lon", "E", "W").field("lon", "999999", 1000.0)
+        .field("time", "9999").field("alt", "9999")
+        .sign("temp", "P", "M").field("temp", "99")
+        .truncate()
+        .any(1).field("dir", "999").field("speed", "999").any(14)
+        .build();
+    private static final FixedFormat.Field LAT = FORMAT.field("lat");
+    private static final FixedFormat.Field LON = FORMAT.field("lon");
+    private static final FixedFormat.Field TIME = FORMAT.field("time");
+    private static final FixedFormat.Field ALT = FORMAT.field("alt");
+    private static final FixedFormat.Field TEMP = FORMAT.field("temp");
+    private static final FixedFormat.Field DIR = FORMAT.field("dir");
+    private static final FixedFormat.Field SPEED = FORMAT.field("speed");
 
     /**
      * Decode something.
      * @param message     An AcarsMessage.
-     * @return            An Iterable<AcarsObservation>, or null
+     * @param baseTime    Absolute time to base any relative timestamps on.
+     * @param sink        Where to send the observations.
+     * @return            True if this is a weather observation message.
      */
-    public Iterable<AcarsObservation> decode(IAcarsMessage message, Date baseTime) {
+    protected boolean decodeReports(IAcarsMessage message, long baseTime, ObservationSink sink) {
         // Delta uses H1 messages from source DF for its observations. If
         // this is not that sort of message, it cannot be an observation.
         String body = message.getMessage();
         if (!message.getLabel().equals("H1") || !message.getSource().equals("DF")) {
-            return null;
+            return false;
         }
 
-        // Split the message body into lines.
-        String[] lines = message.getMessage().split("\\r?\\n");
+        // Step through the message body a line at a time.
+        LineCursor line = new LineCursor(body);
 
         // We simply assume any H1/DF message might contain weather reports
         // and treat anything that looks like one as a report.
         boolean found = false;
-        ArrayList<AcarsObservation> ret = new ArrayList<AcarsObservation>();
-        initBase(baseTime);
-        for (String line : lines) {
-            AcarsObservation obs = null;
-            if (FULL.matcher(line).matches()) {
+        TimeWindow.Hourly hours = TimeWindow.Hourly.forBase(baseTime);
+        while (line.next()) {
+            if (FORMAT.matches(body, line.start(), line.end())) {
                 found = true;
-                obs = makeObs(line);
-            } else if (found && PARTIAL.matcher(line).lookingAt()) {
-                obs = makeObs(line);
+                makeObs(hours, body, line.start(), line.end(), sink);
+            } else if (found && FORMAT.matchesPartial(body, line.start(), line.end())) {
+                makeObs(hours, body, line.start(), line.end(), sink);
             }
-            if (obs != null)
-                ret.add(obs);
         }
 
-        return found ? ret : null;
+        return found;
     }
 
-    private AcarsObservation makeObs(String line) {
-        // Get the basic four coordinates of the observation. These will always
-        // be present.
-        double sign = line.charAt(0) == 'N' ? 1.0 : -1.0;
-        double latitude = sign * Double.parseDouble(line.substring(1, 6)) / 1000.0;
-        sign = line.charAt(6) == 'E' ? 1.0 : -1.0;
-        double longitude = sign * Double.parseDouble(line.substring(7, 13)) / 1000.0;
-        Date observed = parseTime(line.substring(13, 17));
-        int altitude = Integer.parseInt(line.substring(17, 21)) * 10;
-
+    private static void makeObs(TimeWindow.Hourly hours, CharSequence line, int start, int end, ObservationSink sink) {
         // If the timestamp is mangled, silently ignore this observation
-        if (observed == null)
-            return null;
+        int hhmm = TIME.intValue(line, start, end);
+        if (!validTime(hhmm))
+            return;
 
-        // Build the base object.
-        AcarsObservation ret = new AcarsObservation(latitude, longitude, altitude, observed);
+        // Get the basic four coordinates of the observation. These will always
+        // be present.
+        double latitude = LAT.doubleValue(line, start, end);
+        double longitude = LON.doubleValue(line, start, end);
+        long observed = parseTime(hours, hhmm);
+        int altitude = ALT.intValue(line, start, end) * 10;
 
         // Temperature. No fractional degrees, so must be complete.
-        int length = line.length();
-        if (length < 24)
-            return ret;
-        float fsign = line.charAt(21) == 'P' ? 1.0f : -1.0f;
-        ret.setTemperature(fsign * Float.parseFloat(line.substring(22, 24)));
+        float temperature = TEMP.fits(line, start, end) ? TEMP.floatValue(line, start, end) : Float.NaN;
 
-        // Wind direction. Must be complete.
-        if (length < 28)
-            return ret;
-        ret.setWindDirection(Short.parseShort(line.substring(25, 28)));
+        // Wind direction and speed. Each must be complete.
+        int windDirection = DIR.fits(line, start, end) ? DIR.intValue(line, start, end) : ObservationSink.MISSING;
+        int windSpeed = SPEED.fits(line, start, end) ? SPEED.intValue(line, start, end) : ObservationSink.MISSING;
 
-        // Wind speed. Must be complete.
-        if (length < 31)
-            return ret;
-        ret.setWindSpeed(Short.parseShort(line.substring(28, 31)));
-        return ret;
+        sink.observe(observed, latitude, longitude, altitude, temperature, windDirection, windSpeed);
     }
 
-    /* we match the base hour, previous hours back 22, and 1 future
-       hour */
-    private void initBase(Date baseTime) {
-        hours = new HashMap<Integer,GregorianCalendar>();
-        GregorianCalendar base = new GregorianCalendar(ZONE);
-        base.setTime(baseTime);
-        base.set(GregorianCalendar.SECOND, 0);
-        base.set(GregorianCalendar.MILLISECOND, 0);
-        base.add(GregorianCalendar.HOUR_OF_DAY, -22);
-        for (int i=0; i<24; i++) {
-            GregorianCalendar c = (GregorianCalendar) base.clone();
-            c.add(GregorianCalendar.HOUR_OF_DAY, i);
-            hours.put(c.get(GregorianCalendar.HOUR_OF_DAY), c);
-        }
+    /* Delta observations sometimes have mangled timestamps. We ignore
+       those. */
+    private static boolean validTime(int hhmm) {
+        return hhmm / 100 <= 23 && hhmm % 100 <= 59;
     }
 
-    private Date parseTime(String hhmm) {
-        int hh = Integer.parseInt(hhmm.substring(0, 2));
-        int mm = Integer.parseInt(hhmm.substring(2, 4));
-        /* Delta observations sometimes have mangled timestamps. We ignore
-           those. */
-        if (hh < 0 || hh > 23 || mm < 0 || mm > 59)
-            return null;
-        GregorianCalendar ret = hours.get(hh);
-        if (ret == null)
-            throw new IllegalArgumentException("Observation not within supported window.");
-        ret = (GregorianCalendar) ret.clone();
-        ret.set(GregorianCalendar.MINUTE, mm);
-        return ret.getTime();
+    private static long parseTime(TimeWindow.Hourly hours, int hhmm) {
+        return hours.resolve(hhmm / 100, hhmm % 100, 0);
     }
 }
@@ -1,10 +1,5 @@
 package info.koosah.acarsutils.wxdecoder;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,12 +14,19 @@ import info.koosah.acarsutils.*;
  * @author David Barts <n5jrn@me.com>
  */
 public class DecoderForF9 extends WxDecoder {
-    private static final TimeZone ZONE = TimeZone.getTimeZone("GMT");
-
-    private HashMap<Integer,GregorianCalendar> hours;
     private static final Pattern MESSAGE = Pattern.compile("POS[NS][ \\d]{3}\\.\\d{3}[EW][ \\d]{3}\\.\\d{3}, *\\d+,\\d{6},\\d+, *\\d+, *\\d+,[ -] *\\d+,\\d{6},\\w{4}");
 
-    private static final int LAT_LONG = 0;
+    /* Only the head of the message is fixed-width; the rest is
+       comma-separated fields of varying width. */
+    private static final FixedFormat HEAD = new FixedFormat.Builder()
+        .literal("POS")
+        .sign("lat", "N", "S").field("lat", "ZZZ.999")
+        .sign("lon", "E", "W").field("lon", "ZZZ.999")
+        .literal(",")
+        .build();
+    private static final FixedFormat.Field LAT = HEAD.field("lat");
+    private static final FixedFormat.Field LON = HEAD.field("lon");
+
     private static final int WIND_DIR = 1;
     private static final int HHMMSS = 2;
     private static final int ALTITUDE = 3;
@@ -34,91 +36,83 @@ public class DecoderForF9 extends WxDecoder {
     /**
      * Decode something.
      * @param message     An AcarsMessage.
-     * @return            An Iterable<AcarsObservation>, or null
+     * @param baseTime    Absolute time to base any relative timestamps on.
+     * @param sink        Where to send the observations.
+     * @return            True if this is a weather observation message.
      */
-    public Iterable<AcarsObservation> decode(IAcarsMessage message, Date baseTime)
+    protected boolean decodeReports(IAcarsMessage message, long baseTime, ObservationSink sink)
     {
         // Frontier uses label 21 messages for observations.
         if (!message.getLabel().equals("21"))
-            return null;
+            return false;
 
         // Only one observation per message!
         String body = message.getMessage().trim();
-        if (!MESSAGE.matcher(body).matches())
-            return null;
+        if (!HEAD.matchesPartial(body) || !MESSAGE.matcher(body).matches())
+            return false;
 
-        initBase(baseTime);
-        AcarsObservation obs = makeObs(body);
-        if (obs == null)
-            return null;
-        ArrayList<AcarsObservation> ret = new ArrayList<AcarsObservation>(1);
-        ret.add(obs);
-        return ret;
+        TimeWindow.Hourly hours = TimeWindow.Hourly.forBase(baseTime);
+        return makeObs(hours, body, sink);
     }
 
-    private AcarsObservation makeObs(String line)
+    private static boolean makeObs(TimeWindow.Hourly hours, String line, ObservationSink sink)
     {
-        // Break the observation into its fields
-        String[] fields = line.split(",");
-
         // Get the basic four coordinates of the observation. These will always
         // be present.
+        int length = line.length();
         double latitude = 0.0, longitude = 0.0;
         try {
-            double sign = fields[LAT_LONG].charAt(3) == 'N' ? 1.0 : -1.0;
-            latitude = sign *
-                Double.parseDouble(fields[LAT_LONG].substring(4, 11).trim());
-            sign = fields[LAT_LONG].charAt(11) == 'E' ? 1.0 : -1.0;
-            longitude = sign *
-                Double.parseDouble(fields[LAT_LONG].substring(12).trim());
+            latitude = LAT.doubleValue(line, 0, length);
+            longitude = LON.doubleValue(line, 0, length);
         } catch (NumberFormatException e) {
-            return null;
+            return false;
         }
-        Date observed = parseTime(fields[HHMMSS]);
-        if (observed == null)
-            return null;
-        int altitude = Integer.parseInt(fields[ALTITUDE]);
 
-        // Build the base object.
-        AcarsObservation ret = new AcarsObservation(latitude, longitude, altitude, observed);
+        // Step through the rest of the fields. All of them will be here,
+        // because there should never be runt observations in this format.
+        LineCursor field = new LineCursor(line, 0, length, ",");
+        long observed = 0L;
+        int altitude = 0, windDir = 0, windSpeed = 0, temperature = 0;
+        for (int i=0; i<=TEMPERATURE && field.next(); i++) {
+            int start = field.start(), end = field.end();
+            switch (i) {
+            case WIND_DIR:
+                windDir = number(line, start, end);
+                break;
+            case HHMMSS:
+                int hh = TimeWindow.digits(line, start, start + 2);
+                int mm = TimeWindow.digits(line, start + 2, start + 4);
+                int ss = TimeWindow.digits(line, start + 4, end);
+                if (hh > 23 || mm > 59 || ss > 59)
+                    return false;
+                observed = hours.resolve(hh, mm, ss);
+                break;
+            case ALTITUDE:
+                altitude = number(line, start, end);
+                break;
+            case WIND_SPEED:
+                windSpeed = number(line, start, end);
+                break;
+            case TEMPERATURE:
+                temperature = number(line, start, end);
+                break;
+            }
+        }
 
-        // Actually, all the fields will be here, because there should never
-        // be runt observations in this format.
-        ret.setTemperature(Float.parseFloat(fields[TEMPERATURE].replace(" ", "")));
-        ret.setWindDirection(Short.parseShort(fields[WIND_DIR].trim()));
-        ret.setWindSpeed(Short.parseShort(fields[WIND_SPEED].trim()));
-        return ret;
+        sink.observe(observed, latitude, longitude, altitude, (float) temperature, windDir, windSpeed);
+        return true;
     }
 
-    /* we match the base hour, previous hours back 22, and 1 future
-       hour */
-    private void initBase(Date baseTime)
+    /* parse an integer that may have a minus sign and embedded spaces */
+    private static int number(CharSequence s, int start, int end)
     {
-        hours = new HashMap<Integer,GregorianCalendar>();
-        GregorianCalendar base = new GregorianCalendar(ZONE);
-        base.setTime(baseTime);
-        base.set(GregorianCalendar.MILLISECOND, 0);
-        base.add(GregorianCalendar.HOUR_OF_DAY, -22);
-        for (int i=0; i<24; i++) {
-            GregorianCalendar c = (GregorianCalendar) base.clone();
-            c.add(GregorianCalendar.HOUR_OF_DAY, i);
-            hours.put(c.get(GregorianCalendar.HOUR_OF_DAY), c);
+        boolean negative = false;
+        while (start < end && (s.charAt(start) == ' ' || s.charAt(start) == '-')) {
+            if (s.charAt(start) == '-')
+                negative = true;
+            start++;
         }
-    }
-
-    private Date parseTime(String hhmmss)
-    {
-        int hh = Integer.parseInt(hhmmss.substring(0, 2));
-        int mm = Integer.parseInt(hhmmss.substring(2, 4));
-        int ss = Integer.parseInt(hhmmss.substring(4, 6));
-        if (hh > 23 || mm > 59 || ss > 59)
-            return null;
-        GregorianCalendar ret = hours.get(hh);
-        if (ret == null)
-            throw new IllegalArgumentException("Observation not within supported window.");
-        ret = (GregorianCalendar) ret.clone();
-        ret.set(GregorianCalendar.MINUTE, mm);
-        ret.set(GregorianCalendar.SECOND, ss);
-        return ret.getTime();
+        int ret = TimeWindow.digits(s, start, end);
+        return negative ? -ret : ret;
     }
 }
@@ -1,13 +1,5 @@
 package info.koosah.acarsutils.wxdecoder;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import info.koosah.acarsutils.*;
 
 /**
@@ -17,178 +9,114 @@ import info.koosah.acarsutils.*;
  * @author David Barts <n5jrn@me.com>
  */
 public class DecoderForFX extends WxDecoder {
-    private static final TimeZone ZONE = TimeZone.getTimeZone("GMT");
+    /* A format, along with its fields. */
+    private static class Layout {
+        private final FixedFormat format;
+        private final FixedFormat.Field time, lat, lon, alt, temp, dir, speed;
+
+        public Layout(FixedFormat format) {
+            this.format = format;
+            time = format.field("time");
+            lat = format.field("lat");
+            lon = format.field("lon");
+            alt = format.field("alt");
+            temp = format.field("temp");
+            dir = format.field("dir");
+            speed = format.field("speed");
+        }
+    }
 
-    private HashMap<Integer,GregorianCalendar> hours;
-    private static final Pattern A_FULL    = Pattern.compile("/\\d{6}[NS]\\d{4}[EW]\\d{10}[-+\\d]\\d{10}");
-    private static final Pattern A_PARTIAL = Pattern.compile("/\\d{6}[NS]\\d{4}[EW]\\d{10}[-+\\d]\\d{2}");
-    private static final Pattern B_FULL    = Pattern.compile("\\d{6}[-+\\d]\\d{6}[-+\\d]\\d{13}[-+d]\\d{10}");
-    private static final Pattern B_PARTIAL = Pattern.compile("\\d{6}[-+\\d]\\d{6}[-+\\d]\\d{13}[-+d]\\d{2}");
-    private static final Pattern C_FULL    = Pattern.compile("\\d{6}[NS]\\d{4}[EW]\\d{11}[-+\\d]\\d{10}");
-    private static final Pattern C_PARTIAL = Pattern.compile("\\d{6}[NS]\\d{4}[EW]\\d{11}[-+\\d]\\d{2}");
+    private static final Layout A = new Layout(new FixedFormat.Builder()
+        .literal("/").field("time", "999999")
+        .sign("lat", "N", "S").field("lat", "9999", 100.0)
+        .sign("lon", "E", "W").field("lon", "99999", 100.0)
+        .field("alt", "99999").field("temp", "S99")
+        .truncate()
+        .digits(1).field("dir", "999").field("speed", "999").digits(1)
+        .build());
+    private static final Layout B = new Layout(new FixedFormat.Builder()
+        .field("time", "999999")
+        .field("lat", "S999999", 10000.0).field("lon", "S9999999", 10000.0)
+        .digits(1).field("alt", "99999")
+        .sign("temp", "+", "-").field("temp", "99")
+        .truncate()
+        .digits(1).field("dir", "999").field("speed", "999").digits(1)
+        .build());
+    private static final Layout C = new Layout(new FixedFormat.Builder()
+        .field("time", "999999")
+        .sign("lat", "N", "S").field("lat", "9999", 100.0)
+        .sign("lon", "E", "W").field("lon", "99999", 100.0)
+        .digits(1).field("alt", "99999").field("temp", "S99")
+        .truncate()
+        .digits(1).field("dir", "999").field("speed", "999").digits(1)
+        .build());
 
     /**
      * Decode something.
      * @param message     An AcarsMessage.
-     * @return            An Iterable<AcarsObservation>, or null
+     * @param baseTime    Absolute time to base any relative timestamps on.
+     * @param sink        Where to send the observations.
+     * @return            True if this is a weather observation message.
      */
-    public Iterable<AcarsObservation> decode(IAcarsMessage message, Date baseTime) {
+    protected boolean decodeReports(IAcarsMessage message, long baseTime, ObservationSink sink) {
         // FedEx uses H1 messages with a source of DF for observations.
         String body = message.getMessage();
         if (!message.getLabel().equals("H1") || !message.getSource().equals("DF")) {
-            return null;
+            return false;
         }
 
-        // Split the message body into lines.
-        String[] lines = message.getMessage().split("\\r?\\n");
+        // Step through the message body a line at a time.
+        LineCursor line = new LineCursor(body);
 
         // No runts have been observed by me "in the wild" but be lenient
         // and allow them anyhow.
         boolean found = false;
-        ArrayList<AcarsObservation> ret = new ArrayList<AcarsObservation>();
-        initBase(baseTime);
-        for (String line : lines) {
-            AcarsObservation obs = null;
-            if (A_FULL.matcher(line).matches()) {
+        TimeWindow.Hourly hours = TimeWindow.Hourly.forBase(baseTime);
+        while (line.next()) {
+            if (A.format.matches(body, line.start(), line.end())) {
                 found = true;
-                obs = makeObsA(line);
-            } else if (B_FULL.matcher(line).matches()) {
+                makeObs(A, hours, body, line.start(), line.end(), sink);
+            } else if (B.format.matches(body, line.start(), line.end())) {
                 found = true;
-                obs = makeObsB(line);
-            } else if (C_FULL.matcher(line).matches()) {
+                makeObs(B, hours, body, line.start(), line.end(), sink);
+            } else if (C.format.matches(body, line.start(), line.end())) {
                 found = true;
-                obs = makeObsC(line);
+                makeObs(C, hours, body, line.start(), line.end(), sink);
             } else if (found) {
-                if (A_PARTIAL.matcher(line).lookingAt())
-                    obs = makeObsA(line);
-                else if (B_PARTIAL.matcher(line).lookingAt())
-                    obs = makeObsB(line);
-                else if (C_PARTIAL.matcher(line).lookingAt())
-                    obs = makeObsC(line);
+                if (A.format.matchesPartial(body, line.start(), line.end()))
+                    makeObs(A, hours, body, line.start(), line.end(), sink);
+                else if (B.format.matchesPartial(body, line.start(), line.end()))
+                    makeObs(B, hours, body, line.start(), line.end(), sink);
+                else if (C.format.matchesPartial(body, line.start(), line.end()))
+                    makeObs(C, hours, body, line.start(), line.end(), sink);
             }
-            if (obs != null)
-                ret.add(obs);
         }
 
-        return found ? ret : null;
+        return found;
     }
 
-    private AcarsObservation makeObsA(String line) {
+    private static void makeObs(Layout layout, TimeWindow.Hourly hours, CharSequence line, int start, int end, ObservationSink sink) {
         // Get the basic four coordinates of the observation. These will always
         // be present.
-        Date observed = parseTime(line.substring(1, 7));
-        double sign = line.charAt(7) == 'N' ? 1.0 : -1.0;
-        double latitude = sign * Double.parseDouble(line.substring(8, 12)) / 100.0;
-        sign = line.charAt(12) == 'E' ? 1.0 : -1.0;
-        double longitude = sign * Double.parseDouble(line.substring(13, 18)) / 100.0;
-        int altitude = Integer.parseInt(line.substring(18, 23));
-
-        // Build the base object.
-        AcarsObservation ret = new AcarsObservation(latitude, longitude, altitude, observed);
-
-        // Temperature. No fractional degrees, so must be complete.
-        int length = line.length();
-        if (length < 26)
-            return ret;
-        ret.setTemperature(Float.parseFloat(line.substring(23, 26)));
-
-        // Wind direction. Must be complete.
-        if (length < 30)
-            return ret;
-        ret.setWindDirection(Short.parseShort(line.substring(27, 30)));
-
-        // Wind speed. Must be complete.
-        if (length < 33)
-            return ret;
-        ret.setWindSpeed(Short.parseShort(line.substring(30, 33)));
-        return ret;
-    }
-
-    private AcarsObservation makeObsB(String line) {
-        // Get the basic four coordinates of the observation. These will always
-        // be present.
-        Date observed = parseTime(line.substring(0, 6));
-        double latitude = Double.parseDouble(line.substring(6, 13)) / 10000.0;
-        double longitude = Double.parseDouble(line.substring(13, 21)) / 10000.0;
-        int altitude = Integer.parseInt(line.substring(22, 27));
-
-        // Build the base object.
-        AcarsObservation ret = new AcarsObservation(latitude, longitude, altitude, observed);
+        long observed = parseTime(hours, layout.time.intValue(line, start, end));
+        double latitude = layout.lat.doubleValue(line, start, end);
+        double longitude = layout.lon.doubleValue(line, start, end);
+        int altitude = layout.alt.intValue(line, start, end);
 
         // Temperature. No fractional degrees, so must be complete.
-        int length = line.length();
-        if (length < 30)
-            return ret;
-        ret.setTemperature(Float.parseFloat(line.substring(27, 30)));
+        float temperature = layout.temp.fits(line, start, end) ?
+            layout.temp.floatValue(line, start, end) : Float.NaN;
 
-        // Wind direction. Must be complete.
-        if (length < 34)
-            return ret;
-        ret.setWindDirection(Short.parseShort(line.substring(31, 34)));
+        // Wind direction and speed. Each must be complete.
+        int windDirection = layout.dir.fits(line, start, end) ?
+            layout.dir.intValue(line, start, end) : ObservationSink.MISSING;
+        int windSpeed = layout.speed.fits(line, start, end) ?
+            layout.speed.intValue(line, start, end) : ObservationSink.MISSING;
 
-        // Wind speed. Must be complete.
-        if (length < 37)
-            return ret;
-        ret.setWindSpeed(Short.parseShort(line.substring(34, 37)));
-        return ret;
-    }
-
-    private AcarsObservation makeObsC(String line) {
-        // Get the basic four coordinates of the observation. These will always
-        // be present.
-        Date observed = parseTime(line.substring(0, 6));
-        double sign = line.charAt(6) == 'N' ? 1.0 : -1.0;
-        double latitude = sign * Double.parseDouble(line.substring(7, 11)) / 100.0;
-        sign = line.charAt(11) == 'E' ? 1.0 : -1.0;
-        double longitude = sign * Double.parseDouble(line.substring(12, 17)) / 100.0;
-        int altitude = Integer.parseInt(line.substring(18, 23));
-
-        // Build the base object.
-        AcarsObservation ret = new AcarsObservation(latitude, longitude, altitude, observed);
-
-        // Temperature. No fractional degrees, so must be complete.
-        int length = line.length();
-        if (length < 26)
-            return ret;
-        ret.setTemperature(Float.parseFloat(line.substring(23, 26)));
-
-        // Wind direction. Must be complete.
-        if (length < 30)
-            return ret;
-        ret.setWindDirection(Short.parseShort(line.substring(27, 30)));
-
-        // Wind speed. Must be complete.
-        if (length < 33)
-            return ret;
-        ret.setWindSpeed(Short.parseShort(line.substring(30, 33)));
-        return ret;
-    }
-
-    /* we match the base hour, previous hours back 22, and 1 future
-       hour */
-    private void initBase(Date baseTime) {
-        hours = new HashMap<Integer,GregorianCalendar>();
-        GregorianCalendar base = new GregorianCalendar(ZONE);
-        base.setTime(baseTime);
-        base.set(GregorianCalendar.MILLISECOND, 0);
-        base.add(GregorianCalendar.HOUR_OF_DAY, -22);
-        for (int i=0; i<24; i++) {
-            GregorianCalendar c = (GregorianCalendar) base.clone();
-            c.add(GregorianCalendar.HOUR_OF_DAY, i);
-            hours.put(c.get(GregorianCalendar.HOUR_OF_DAY), c);
-        }
+        sink.observe(observed, latitude, longitude, altitude, temperature, windDirection, windSpeed);
     }
 
-    private Date parseTime(String hhmmss) {
-        int hh = Integer.parseInt(hhmmss.substring(0, 2));
-        int mm = Integer.parseInt(hhmmss.substring(2, 4));
-        int ss = Integer.parseInt(hhmmss.substring(4, 6));
-        GregorianCalendar ret = hours.get(hh);
-        if (ret == null)
-            throw new IllegalArgumentException("Observation not within supported window.");
-        ret = (GregorianCalendar) ret.clone();
-        ret.set(GregorianCalendar.MINUTE, mm);
-        ret.set(GregorianCalendar.SECOND, ss);
-        return ret.getTime();
+    private static long parseTime(TimeWindow.Hourly hours, int hhmmss) {
+        return hours.resolve(hhmmss / 10000, hhmmss / 100 % 100, hhmmss % 100);
     }
 }
@@ -1,13 +1,5 @@
 package info.koosah.acarsutils.wxdecoder;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import info.koosah.acarsutils.*;
 
 /**
@@ -18,24 +10,35 @@ import info.koosah.acarsutils.*;
  * @author David Barts <n5jrn@me.com>
  */
 public class DecoderForNW extends WxDecoder {
-    private static final TimeZone ZONE = TimeZone.getTimeZone("GMT");
-
-    private HashMap<Integer,GregorianCalendar> hours;
-    private static final Pattern FULL    = Pattern.compile("[NS]\\d{5}[EW]\\d{13}[-+\\d]\\d{11}");
-    private static final Pattern PARTIAL = Pattern.compile("[NS]\\d{5}[EW]\\d{13}[-+\\d]\\d{2}");
+    private static final FixedFormat FORMAT = new FixedFormat.Builder()
+        .sign("lat", "N", "S").field("lat", "99999", 1000.0)
+        .sign("lon", "E", "W").field("lon", "999999", 1000.0)
+        .field("time", "9999").field("alt", "999").field("temp", "S99")
+        .truncate()
+        .digits(1).field("dir", "999").field("speed", "999").digits(2)
+        .build();
+    private static final FixedFormat.Field LAT = FORMAT.field("lat");
+    private static final FixedFormat.Field LON = FORMAT.field("lon");
+    private static final FixedFormat.Field TIME = FORMAT.field("time");
+    private static final FixedFormat.Field ALT = FORMAT.field("alt");
+    private static final FixedFormat.Field TEMP = FORMAT.field("temp");
+    private static final FixedFormat.Field DIR = FORMAT.field("dir");
+    private static final FixedFormat.Field SPEED = FORMAT.field("speed");
     private static final String PREFIX = "#DFB*WXR";
 
     /**
      * Decode something.
      * @param message     An AcarsMessage.
-     * @return            An Iterable<AcarsObservation>, or null
+     * @param baseTime    Absolute time to base any relative timestamps on.
+     * @param sink        Where to send the observations.
+     * @return            True if this is a weather observation message.
      */
-    public Iterable<AcarsObservation> decode(IAcarsMessage message, Date baseTime) {
+    protected boolean decodeReports(IAcarsMessage message, long baseTime, ObservationSink sink) {
         // Northwest uses H1 messages that start "#DFB*WXR" for their
         // weather reports.
         String body = message.getMessage();
         if (!message.getLabel().equals("H1") || !body.startsWith(PREFIX)) {
-            return null;
+            return false;
         }
 
         // Get the reports themselves. There may be some junk whitespace
@@ -46,82 +49,42 @@ public class DecoderForNW extends WxDecoder {
             if (!Character.isWhitespace(body.charAt(start)))
                 break;
         }
-        String[] lines = body.substring(start).split("\\r?\\n");
+        LineCursor line = new LineCursor(body, start, length);
 
         // All lines SHOULD be complete observations, but be lenient.
         boolean found = false;
-        ArrayList<AcarsObservation> ret = new ArrayList<AcarsObservation>();
-        initBase(baseTime);
-        for (String line : lines) {
-            AcarsObservation obs = null;
-            if (FULL.matcher(line).matches()) {
+        TimeWindow.Hourly hours = TimeWindow.Hourly.forBase(baseTime);
+        while (line.next()) {
+            if (FORMAT.matches(body, line.start(), line.end())) {
                 found = true;
-                obs = makeObs(line);
-            } else if (found && PARTIAL.matcher(line).lookingAt()) {
-                obs = makeObs(line);
+                makeObs(hours, body, line.start(), line.end(), sink);
+            } else if (found && FORMAT.matchesPartial(body, line.start(), line.end())) {
+                makeObs(hours, body, line.start(), line.end(), sink);
             }
-            if (obs != null)
-                ret.add(obs);
         }
 
-        return ret;
+        return true;
     }
 
-    private AcarsObservation makeObs(String line) {
+    private static void makeObs(TimeWindow.Hourly hours, CharSequence line, int start, int end, ObservationSink sink) {
         // Get the basic four coordinates of the observation. These will always
         // be present.
-        double sign = line.charAt(0) == 'N' ? 1.0 : -1.0;
-        double latitude = sign * Double.parseDouble(line.substring(1, 6)) / 1000.0;
-        sign = line.charAt(6) == 'E' ? 1.0 : -1.0;
-        double longitude = sign * Double.parseDouble(line.substring(7, 13)) / 1000.0;
-        Date observed = parseTime(line.substring(13, 17));
-        int altitude = Integer.parseInt(line.substring(17, 20)) * 100;
-
-        // Build the base object.
-        AcarsObservation ret = new AcarsObservation(latitude, longitude, altitude, observed);
+        double latitude = LAT.doubleValue(line, start, end);
+        double longitude = LON.doubleValue(line, start, end);
+        long observed = parseTime(hours, TIME.intValue(line, start, end));
+        int altitude = ALT.intValue(line, start, end) * 100;
 
         // Temperature. No fractional degrees, so must be complete.
-        int length = line.length();
-        if (length < 23)
-            return ret;
-        ret.setTemperature(Float.parseFloat(line.substring(20, 23)));
+        float temperature = TEMP.fits(line, start, end) ? TEMP.floatValue(line, start, end) : Float.NaN;
 
-        // Wind direction. Must be complete.
-        if (length < 27)
-            return ret;
-        ret.setWindDirection(Short.parseShort(line.substring(24, 27)));
+        // Wind direction and speed. Each must be complete.
+        int windDirection = DIR.fits(line, start, end) ? DIR.intValue(line, start, end) : ObservationSink.MISSING;
+        int windSpeed = SPEED.fits(line, start, end) ? SPEED.intValue(line, start, end) : ObservationSink.MISSING;
 
-        // Wind speed. Must be complete.
-        if (length < 30)
-            return ret;
-        ret.setWindSpeed(Short.parseShort(line.substring(27, 30)));
-        return ret;
-    }
-
-    /* we match the base hour, previous hours back 22, and 1 future
-       hour */
-    private void initBase(Date baseTime) {
-        hours = new HashMap<Integer,GregorianCalendar>();
-        GregorianCalendar base = new GregorianCalendar(ZONE);
-        base.setTime(baseTime);
-        base.set(GregorianCalendar.SECOND, 0);
-        base.set(GregorianCalendar.MILLISECOND, 0);
-        base.add(GregorianCalendar.HOUR_OF_DAY, -22);
-        for (int i=0; i<24; i++) {
-            GregorianCalendar c = (GregorianCalendar) base.clone();
-            c.add(GregorianCalendar.HOUR_OF_DAY, i);
-            hours.put(c.get(GregorianCalendar.HOUR_OF_DAY), c);
-        }
+        sink.observe(observed, latitude, longitude, altitude, temperature, windDirection, windSpeed);
     }
 
-    private Date parseTime(String hhmm) {
-        int hh = Integer.parseInt(hhmm.substring(0, 2));
-        int mm = Integer.parseInt(hhmm.substring(2, 4));
-        GregorianCalendar ret = hours.get(hh);
-        if (ret == null)
-            throw new IllegalArgumentException("Observation not within supported window.");
-        ret = (GregorianCalendar) ret.clone();
-        ret.set(GregorianCalendar.MINUTE, mm);
-        return ret.getTime();
+    private static long parseTime(TimeWindow.Hourly hours, int hhmm) {
+        return hours.resolve(hhmm / 100, hhmm % 100, 0);
     }
 }
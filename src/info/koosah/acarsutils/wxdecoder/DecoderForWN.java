@@ -1,12 +1,5 @@
 package info.koosah.acarsutils.wxdecoder;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import info.koosah.acarsutils.*;
 
 /**
@@ -15,26 +8,40 @@ import info.koosah.acarsutils.*;
  * @author David Barts <n5jrn@me.com>
  */
 public class DecoderForWN extends WxDecoder {
-    private static final TimeZone ZONE = TimeZone.getTimeZone("GMT");
-
-    private GregorianCalendar[] daysToTry;
-    private static final Pattern FULL    = Pattern.compile("[NS]\\d{4}\\.\\d,[EW]\\d{5}\\.\\d,\\d{6},\\d{5},[-+\\d]\\d{2}.\\d,\\d{3},\\d{3},[A-Z]{2},\\d{5},\\d,");
-    private static final Pattern PARTIAL = Pattern.compile("[NS]\\d{4}\\.\\d,[EW]\\d{5}\\.\\d,\\d{6},\\d{5},[-+\\d]\\d{2}");
+    private static final FixedFormat FORMAT = new FixedFormat.Builder()
+        .sign("lat", "N", "S").field("lat", "9999", 100.0).literal(".").digits(1).literal(",")
+        .sign("lon", "E", "W").field("lon", "99999", 100.0).literal(".").digits(1).literal(",")
+        .field("time", "999999").literal(",").field("alt", "99999").literal(",")
+        .field("temp", "S99.9")
+        .truncateAt(33)
+        .literal(",").field("dir", "999").literal(",").field("speed", "999").literal(",")
+        .oneOf(FixedFormat.UPPER, 2).literal(",").digits(5).literal(",").digits(1).literal(",")
+        .build();
+    private static final FixedFormat.Field LAT = FORMAT.field("lat");
+    private static final FixedFormat.Field LON = FORMAT.field("lon");
+    private static final FixedFormat.Field TIME = FORMAT.field("time");
+    private static final FixedFormat.Field ALT = FORMAT.field("alt");
+    private static final FixedFormat.Field TEMP = FORMAT.field("temp");
+    private static final FixedFormat.Field DIR = FORMAT.field("dir");
+    private static final FixedFormat.Field SPEED = FORMAT.field("speed");
 
     /**
      * Decode something.
      * @param message     An AcarsMessage.
-     * @return            An Iterable<AcarsObservation>, or null
+     * @param baseTime    Absolute time to base any relative timestamps on.
+     * @param sink        Where to send the observations.
+     * @return            True if this is a weather observation message.
      */
-    public Iterable<AcarsObservation> decode(IAcarsMessage message, Date baseTime) {
+    protected boolean decodeReports(IAcarsMessage message, long baseTime, ObservationSink sink) {
         // Southwest uses H1 messages from source DF for its observations. If
         // this is not that sort of message, it cannot be an observation.
         if (!message.getLabel().equals("H1") || !message.getSource().equals("DF")) {
-            return null;
+            return false;
         }
 
-        // Split the message body into lines.
-        String[] lines = message.getMessage().split("\\r?\\n");
+        // Step through the message body a line at a time.
+        String body = message.getMessage();
+        LineCursor line = new LineCursor(body);
 
         // Messages often contain "runt observations" at the end, because
         // Alaska's firmware is too stupid to know the maximum ACARS message
@@ -42,80 +49,38 @@ public class DecoderForWN extends WxDecoder {
         // observation to start with then try to parse out as many usable
         // observations as we can.
         boolean found = false;
-        ArrayList<AcarsObservation> ret = new ArrayList<AcarsObservation>();
-        initBase(baseTime);
-        for (String line : lines) {
-            AcarsObservation obs = null;
-            if (FULL.matcher(line).matches()) {
+        TimeWindow.Daily daysToTry = TimeWindow.Daily.forBase(baseTime);
+        while (line.next()) {
+            if (FORMAT.matches(body, line.start(), line.end())) {
                 found = true;
-                obs = makeObs(line);
-            } else if (found && PARTIAL.matcher(line).lookingAt()) {
-                obs = makeObs(line);
+                makeObs(daysToTry, body, line.start(), line.end(), sink);
+            } else if (found && FORMAT.matchesPartial(body, line.start(), line.end())) {
+                makeObs(daysToTry, body, line.start(), line.end(), sink);
             }
-            if (obs != null)
-                ret.add(obs);
         }
 
-        return found ? ret : null;
+        return found;
     }
 
-    private AcarsObservation makeObs(String line) {
+    private static void makeObs(TimeWindow.Daily daysToTry, CharSequence line, int start, int end, ObservationSink sink) {
         // Get the basic four coordinates of the observation. These will always
         // be present.
-        double sign = line.charAt(0) == 'N' ? 1.0 : -1.0;
-        double latitude = sign * Double.parseDouble(line.substring(1, 5)) / 100.0;
-        sign = line.charAt(8) == 'E' ? 1.0 : -1.0;
-        double longitude = sign * Double.parseDouble(line.substring(9, 14)) / 100.0;
-        Date observed = parseTime(line.substring(17, 23));
-        int altitude = Integer.parseInt(line.substring(24, 29));
-
-        // Build the base object.
-        AcarsObservation ret = new AcarsObservation(latitude, longitude, altitude, observed);
+        double latitude = LAT.doubleValue(line, start, end);
+        double longitude = LON.doubleValue(line, start, end);
+        long observed = parseTime(daysToTry, TIME.intValue(line, start, end));
+        int altitude = ALT.intValue(line, start, end);
 
         // Temperature. OK if it's missing fractional degrees.
-        int length = line.length();
-        String raw = null;
-        if (length < 35)
-            raw = line.substring(30);
-        else
-            raw = line.substring(30, 35);
-        ret.setTemperature(Float.parseFloat(raw));
+        float temperature = TEMP.floatValue(line, start, end);
 
-        // Wind direction. Must be complete.
-        if (length < 39)
-            return ret;
-        ret.setWindDirection(Short.parseShort(line.substring(36, 39)));
+        // Wind direction and speed. Each must be complete.
+        int windDirection = DIR.fits(line, start, end) ? DIR.intValue(line, start, end) : ObservationSink.MISSING;
+        int windSpeed = SPEED.fits(line, start, end) ? SPEED.intValue(line, start, end) : ObservationSink.MISSING;
 
-        // Wind speed. Must be complete.
-        if (length < 43)
-            return ret;
-        ret.setWindSpeed(Short.parseShort(line.substring(40, 43)));
-        return ret;
+        sink.observe(observed, latitude, longitude, altitude, temperature, windDirection, windSpeed);
     }
 
-    private void initBase(Date baseTime) {
-        GregorianCalendar today = new GregorianCalendar(ZONE);
-        today.setTime(baseTime);
-        today.set(GregorianCalendar.SECOND, 0);
-        today.set(GregorianCalendar.MILLISECOND, 0);
-        GregorianCalendar yesterday = (GregorianCalendar) today.clone();
-        yesterday.add(GregorianCalendar.DATE, -1);
-        GregorianCalendar tomorrow = (GregorianCalendar) today.clone();
-        tomorrow.add(GregorianCalendar.DATE, 1);
-        daysToTry = new GregorianCalendar[] { today, yesterday, tomorrow };
-    }
-
-    private Date parseTime(String ddhhmm) {
-        int dd = Integer.parseInt(ddhhmm.substring(0, 2));
-        int hh = Integer.parseInt(ddhhmm.substring(2, 4));
-        int mm = Integer.parseInt(ddhhmm.substring(4, 6));
-        for (GregorianCalendar day : daysToTry)
-            if (dd == day.get(GregorianCalendar.DAY_OF_MONTH)) {
-                GregorianCalendar ret = (GregorianCalendar) day.clone();
-                ret.set(GregorianCalendar.MINUTE, mm);
-                ret.set(GregorianCalendar.HOUR_OF_DAY, hh);
-                return ret.getTime();
-            }
-        throw new IllegalArgumentException("Observation not within 24 hrs of base time");
+    private static long parseTime(TimeWindow.Daily daysToTry, int ddhhmm) {
+        return daysToTry.resolve(ddhhmm / 10000, ddhhmm / 100 % 100, ddhhmm % 100);
     }
 }
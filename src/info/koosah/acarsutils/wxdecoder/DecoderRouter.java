@@ -0,0 +1,153 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.util.Arrays;
+import java.util.Date;
+import info.koosah.acarsutils.AcarsLabels;
+import info.koosah.acarsutils.AcarsObservation;
+import info.koosah.acarsutils.IAcarsMessage;
+
+/**
+ * Picks a decoder for a message when the flight ID can't be used to do
+ * so. Rather than trying every decoder in turn, we look at a cheap
+ * fingerprint of the message (its label, its H1 source, a fixed prefix
+ * and its length) and only try the decoders that fingerprint could
+ * possibly match. Routes for each label are kept in a dense array
+ * indexed by label code, so finding the candidates is a single array
+ * access; usually there is only one.
+ *
+ * Decoders with a distinctive prefix are tried before those that accept
+ * anything with the right label and source, as some prefixed messages
+ * (e.g. American's) are also H1 messages from source DF. A decoder that
+ * rejects a message with an IllegalArgumentException (see WxDecoder.decode)
+ * is treated like one that does not recognize it, and the next route is
+ * tried; as rejected messages pass nothing to the sink, this is safe.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class DecoderRouter {
+    /* not intended to be instantiated */
+    private DecoderRouter() {}
+
+    /* One way a message might be routed to a decoder. */
+    private static class Route {
+        private final int source;
+        private final String prefix;
+        private final int minLength;
+        private final WxDecoder decoder;
+
+        public Route(int source, String prefix, int minLength, WxDecoder decoder) {
+            this.source = source;
+            this.prefix = prefix;
+            this.minLength = minLength;
+            this.decoder = decoder;
+        }
+
+        public boolean matches(int source, String body) {
+            return (this.source == AcarsLabels.NONE || this.source == source) &&
+                body.length() >= minLength &&
+                (prefix == null || body.startsWith(prefix));
+        }
+    }
+
+    /* routes, indexed by label code, in the order they are to be tried */
+    private static final Route[][] ROUTES = new Route[AcarsLabels.SIZE][];
+    static {
+        route("H1", null, "#DFB*WXR", 0, "NW");
+        route("H1", null, "#DFBA3", 23, "AA");
+        route("H1", "DF", null, 0, "AS");
+        route("H1", "DF", null, 0, "DL");
+        route("H1", "DF", null, 0, "FX");
+        route("H1", "DF", null, 0, "WN");
+        route("H2", null, null, 14, "AM");
+        route("21", null, null, 0, "F9");
+        route("4T", null, "AGFSR", 116, "AC");
+    }
+
+    private static void route(String label, String source, String prefix, int minLength, String name) {
+        WxDecoder decoder;
+        try {
+            decoder = WxDecoder.sharedForName(name);
+        } catch (WxDecoder.UnknownAirlineException e) {
+            throw new RuntimeException(e);
+        }
+        int code = AcarsLabels.code(label);
+        Route[] old = ROUTES[code];
+        Route[] routes = old == null ? new Route[1] : Arrays.copyOf(old, old.length + 1);
+        routes[routes.length - 1] = new Route(AcarsLabels.code(source), prefix, minLength, decoder);
+        ROUTES[code] = routes;
+    }
+
+    /* discards observations */
+    private static final ObservationSink DISCARD = (observed, latitude, longitude,
+        altitude, temperature, windDirection, windSpeed) -> {};
+
+    /* find the first route that decodes the message, or null */
+    private static Route find(IAcarsMessage message, long baseTime, ObservationSink sink) {
+        int label = AcarsLabels.code(message.getLabel());
+        if (label == AcarsLabels.NONE)
+            return null;
+        Route[] routes = ROUTES[label];
+        if (routes == null)
+            return null;
+        String body = message.getMessage();
+        if (body == null)
+            return null;
+        int source = AcarsLabels.code(message.getSource());
+        for (Route route : routes) {
+            if (!route.matches(source, body))
+                continue;
+            try {
+                if (route.decoder.decode(message, baseTime, sink))
+                    return route;
+            } catch (IllegalArgumentException e) {
+                /* rejected, so try the next route */
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the decoder that can decode a message.
+     * @param message     An AcarsMessage
+     * @param baseTime    Absolute time to base any relative timestamps on.
+     * @return            The (shared) decoder, or null if none can.
+     */
+    public static WxDecoder detect(IAcarsMessage message, Date baseTime) {
+        Route route = find(message, baseTime.getTime(), DISCARD);
+        return route == null ? null : route.decoder;
+    }
+
+    /**
+     * Decode a message with the first decoder that accepts it, passing
+     * each observation to a sink as it is decoded.
+     * @param message     An AcarsMessage
+     * @param baseTime    Absolute time to base any relative timestamps on,
+     *                    in milliseconds since the epoch.
+     * @param sink        Where to send the observations.
+     * @return            True if some decoder recognized the message.
+     */
+    public static boolean decode(IAcarsMessage message, long baseTime, ObservationSink sink) {
+        return find(message, baseTime, sink) != null;
+    }
+
+    /**
+     * Decode a message with the first decoder that accepts it.
+     * @param message     An AcarsMessage
+     * @param baseTime    Absolute time to base any relative timestamps on.
+     * @return            An Iterable<AcarsObservation>, or null if no
+     *                    decoder recognized the message.
+     */
+    public static Iterable<AcarsObservation> decode(IAcarsMessage message, Date baseTime) {
+        WxDecoder.Collector c = new WxDecoder.Collector();
+        return find(message, baseTime.getTime(), c) == null ? null : c.list;
+    }
+
+    /**
+     * Convenience method, based on current date and time.
+     * @param message     An AcarsMessage
+     * @return            An Iterable<AcarsObservation>, or null
+     */
+    public static Iterable<AcarsObservation> decode(IAcarsMessage message) {
+        return decode(message, new Date());
+    }
+}
@@ -0,0 +1,430 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Describes a fixed-width observation format: which characters may appear
+ * at each position, and where the numeric fields are. A format is built
+ * once, then used both to validate lines and to extract field values
+ * directly from them, with no regular expressions, substrings or
+ * parsing of temporary Strings.
+ *
+ * Each position has a set of allowed characters, stored as a 128-bit mask
+ * (two longs), so validation is a couple of shifts per character. Runt
+ * observations are common, so a format may have a truncation point: a
+ * line that is valid up to that point is a valid partial observation,
+ * whatever follows it.
+ *
+ * Numeric fields are described by a picture, in which '9' is a digit,
+ * 'Z' a digit or leading space, 'S' a digit or sign, and '.' a decimal
+ * point. A field may also have its sign in a separate position (such as
+ * N/S for latitude), either before or after its digits.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+final class FixedFormat {
+    /* Character sets. */
+    static final String DIGITS = "0123456789";
+    static final String UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    static final String WORD = UPPER + "abcdefghijklmnopqrstuvwxyz" + DIGITS + "_";
+
+    /* Powers of ten, for decimal points. */
+    private static final double[] POW10 = { 1.0, 10.0, 100.0, 1000.0,
+        10000.0, 100000.0, 1000000.0, 10000000.0, 100000000.0 };
+    private static final float[] FPOW10 = { 1.0f, 10.0f, 100.0f, 1000.0f,
+        10000.0f, 100000.0f, 1000000.0f, 10000000.0f, 100000000.0f };
+
+    /**
+     * A numeric field within a format.
+     */
+    static final class Field {
+        private final int offset, end, point, signAt;
+        private final boolean leadingSign;
+        private final String minus;
+        private final double divisor;
+
+        private Field(int offset, String picture, int signAt, String minus, double divisor) {
+            this.offset = offset;
+            end = offset + picture.length();
+            int p = picture.indexOf('.');
+            point = p < 0 ? -1 : offset + p;
+            leadingSign = picture.charAt(0) == 'S';
+            this.signAt = signAt;
+            this.minus = minus;
+            this.divisor = divisor;
+        }
+
+        /**
+         * Whether a line is long enough to contain all of this field.
+         * @param s           Characters containing the line.
+         * @param start       Offset of the start of the line.
+         * @param end         Offset of the end of the line.
+         * @return            True if the field is complete.
+         */
+        boolean fits(CharSequence s, int start, int end) {
+            int length = end - start;
+            return length >= this.end && length > signAt;
+        }
+
+        /* parse the digits present, which must be at least one */
+        private long digits(CharSequence s, int start, int last) {
+            long ret = 0;
+            boolean any = false;
+            for (int i=offset; i<last; i++) {
+                char c = s.charAt(start + i);
+                if (c >= '0' && c <= '9') {
+                    ret = ret * 10 + (c - '0');
+                    any = true;
+                } else if (!((c == ' ' && !any) || (i == point && c == '.') ||
+                        (i == offset && leadingSign && (c == '+' || c == '-')))) {
+                    throw new NumberFormatException("Invalid character in field: " + c);
+                }
+            }
+            if (!any)
+                throw new NumberFormatException("No digits in field");
+            return ret;
+        }
+
+        private boolean negative(CharSequence s, int start) {
+            if (signAt >= 0)
+                return minus.indexOf(s.charAt(start + signAt)) >= 0;
+            return leadingSign && s.charAt(start + offset) == '-';
+        }
+
+        /* where the digits present end */
+        private int last(int start, int end) {
+            return Math.min(this.end, end - start);
+        }
+
+        /* number of decimal places present */
+        private int places(int last) {
+            return point < 0 || point >= last ? 0 : last - point - 1;
+        }
+
+        /**
+         * Get the value of this field as an integer. As much of the field
+         * as is present is used.
+         * @param s           Characters containing the line.
+         * @param start       Offset of the start of the line.
+         * @param end         Offset of the end of the line.
+         * @return            Value, ignoring any decimal point.
+         * @throws NumberFormatException If the field is not a number.
+         */
+        int intValue(CharSequence s, int start, int end) {
+            int ret = (int) digits(s, start, last(start, end));
+            return negative(s, start) ? -ret : ret;
+        }
+
+        /**
+         * Get the value of this field as a double, divided by the field's
+         * divisor. As much of the field as is present is used.
+         * @param s           Characters containing the line.
+         * @param start       Offset of the start of the line.
+         * @param end         Offset of the end of the line.
+         * @return            Value.
+         * @throws NumberFormatException If the field is not a number.
+         */
+        double doubleValue(CharSequence s, int start, int end) {
+            int last = last(start, end);
+            double sign = negative(s, start) ? -1.0 : 1.0;
+            return sign * (digits(s, start, last) / POW10[places(last)]) / divisor;
+        }
+
+        /**
+         * Get the value of this field as a float, divided by the field's
+         * divisor. As much of the field as is present is used.
+         * @param s           Characters containing the line.
+         * @param start       Offset of the start of the line.
+         * @param end         Offset of the end of the line.
+         * @return            Value.
+         * @throws NumberFormatException If the field is not a number.
+         */
+        float floatValue(CharSequence s, int start, int end) {
+            int last = last(start, end);
+            float sign = negative(s, start) ? -1.0f : 1.0f;
+            float ret = sign * ((float) digits(s, start, last) / FPOW10[places(last)]);
+            return divisor == 1.0 ? ret : (float) (ret / divisor);
+        }
+    }
+
+    /**
+     * Builds formats, one position at a time.
+     */
+    static final class Builder {
+        private long[] low, high;
+        private int length, truncation;
+        private final HashMap<String, Integer> offsets, signs;
+        private final HashMap<String, String> pictures, minuses;
+        private final HashMap<String, Double> divisors;
+
+        Builder() {
+            low = new long[32];
+            high = new long[32];
+            length = 0;
+            truncation = -1;
+            offsets = new HashMap<String, Integer>();
+            signs = new HashMap<String, Integer>();
+            pictures = new HashMap<String, String>();
+            minuses = new HashMap<String, String>();
+            divisors = new HashMap<String, Double>();
+        }
+
+        /* add a position that allows the given characters (null = any) */
+        private void position(String allowed) {
+            if (length == low.length) {
+                low = Arrays.copyOf(low, length * 2);
+                high = Arrays.copyOf(high, length * 2);
+            }
+            if (allowed == null) {
+                low[length] = high[length] = -1L;
+            } else {
+                for (int i=0; i<allowed.length(); i++) {
+                    char c = allowed.charAt(i);
+                    if (c >= 128)
+                        throw new IllegalArgumentException("Invalid character: " + c);
+                    if (c < 64)
+                        low[length] |= 1L << c;
+                    else
+                        high[length] |= 1L << (c - 64);
+                }
+            }
+            length++;
+        }
+
+        /**
+         * Add characters that must appear exactly as given.
+         * @param chars       Characters.
+         * @return            This builder.
+         */
+        Builder literal(String chars) {
+            for (int i=0; i<chars.length(); i++)
+                position(chars.substring(i, i + 1));
+            return this;
+        }
+
+        /**
+         * Add positions that may contain anything.
+         * @param n           Number of positions.
+         * @return            This builder.
+         */
+        Builder any(int n) {
+            for (int i=0; i<n; i++)
+                position(null);
+            return this;
+        }
+
+        /**
+         * Add positions that may contain any of a set of characters.
+         * @param allowed     Allowed characters.
+         * @param n           Number of positions.
+         * @return            This builder.
+         */
+        Builder oneOf(String allowed, int n) {
+            for (int i=0; i<n; i++)
+                position(allowed);
+            return this;
+        }
+
+        /**
+         * Add positions that must contain digits we don't care about.
+         * @param n           Number of positions.
+         * @return            This builder.
+         */
+        Builder digits(int n) {
+            return oneOf(DIGITS, n);
+        }
+
+        /**
+         * Add a numeric field.
+         * @param name        Name of the field.
+         * @param picture     Picture of the field (see above).
+         * @return            This builder.
+         */
+        Builder field(String name, String picture) {
+            return field(name, picture, 1.0);
+        }
+
+        /**
+         * Add a numeric field, whose value is to be scaled.
+         * @param name        Name of the field.
+         * @param picture     Picture of the field (see above).
+         * @param divisor     What to divide floating-point values by.
+         * @return            This builder.
+         */
+        Builder field(String name, String picture, double divisor) {
+            if (offsets.containsKey(name))
+                throw new IllegalArgumentException("Duplicate field: " + name);
+            offsets.put(name, length);
+            pictures.put(name, picture);
+            divisors.put(name, divisor);
+            for (int i=0; i<picture.length(); i++) {
+                switch (picture.charAt(i)) {
+                case '9':
+                    position(DIGITS);
+                    break;
+                case 'Z':
+                    position(DIGITS + " ");
+                    break;
+                case 'S':
+                    position(DIGITS + "+-");
+                    break;
+                case '.':
+                    position(".");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid picture: " + picture);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Add the sign of a numeric field, which may come before or after
+         * the field itself.
+         * @param name        Name of the field.
+         * @param plus        Characters meaning positive, or null for any
+         *                    character not meaning negative.
+         * @param minus       Characters meaning negative.
+         * @return            This builder.
+         */
+        Builder sign(String name, String plus, String minus) {
+            if (signs.containsKey(name))
+                throw new IllegalArgumentException("Duplicate sign: " + name);
+            signs.put(name, length);
+            minuses.put(name, minus);
+            position(plus == null ? null : plus + minus);
+            return this;
+        }
+
+        /**
+         * Mark the current position as the truncation point; lines that
+         * are valid up to here are valid partial lines.
+         * @return            This builder.
+         */
+        Builder truncate() {
+            truncation = length;
+            return this;
+        }
+
+        /**
+         * Set the truncation point explicitly, for formats where it falls
+         * within a field.
+         * @param position    Offset of the truncation point.
+         * @return            This builder.
+         */
+        Builder truncateAt(int position) {
+            if (position < 0 || position > length)
+                throw new IllegalArgumentException("Invalid truncation point: " + position);
+            truncation = position;
+            return this;
+        }
+
+        /**
+         * Build the format.
+         * @return            The format.
+         */
+        FixedFormat build() {
+            for (String name : signs.keySet())
+                if (!offsets.containsKey(name))
+                    throw new IllegalStateException("Sign without field: " + name);
+            return new FixedFormat(this);
+        }
+    }
+
+    private final long[] low, high;
+    private final int minLength;
+    private final HashMap<String, Field> fields;
+
+    private FixedFormat(Builder b) {
+        low = Arrays.copyOf(b.low, b.length);
+        high = Arrays.copyOf(b.high, b.length);
+        minLength = b.truncation < 0 ? b.length : b.truncation;
+        fields = new HashMap<String, Field>();
+        for (String name : b.offsets.keySet()) {
+            Integer signAt = b.signs.get(name);
+            fields.put(name, new Field(b.offsets.get(name), b.pictures.get(name),
+                signAt == null ? -1 : signAt, b.minuses.get(name), b.divisors.get(name)));
+        }
+    }
+
+    /**
+     * Get a field. Intended to be called once, when setting up a decoder.
+     * @param name        Name of the field.
+     * @return            Field.
+     */
+    Field field(String name) {
+        Field ret = fields.get(name);
+        if (ret == null)
+            throw new IllegalArgumentException("Unknown field: " + name);
+        return ret;
+    }
+
+    /**
+     * Get the length of a full line.
+     * @return            Length.
+     */
+    int length() {
+        return low.length;
+    }
+
+    /**
+     * Get the shortest length a partial line may have.
+     * @return            Length.
+     */
+    int minLength() {
+        return minLength;
+    }
+
+    /* check the first n characters */
+    private boolean valid(CharSequence s, int start, int n) {
+        for (int i=0; i<n; i++) {
+            char c = s.charAt(start + i);
+            long bits = c < 64 ? low[i] >>> c : c < 128 ? high[i] >>> (c - 64) : 0L;
+            if ((bits & 1L) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether a line is a complete, valid line in this format.
+     * @param s           Characters containing the line.
+     * @param start       Offset of the start of the line.
+     * @param end         Offset of the end of the line.
+     * @return            True if it is.
+     */
+    boolean matches(CharSequence s, int start, int end) {
+        return end - start == low.length && valid(s, start, low.length);
+    }
+
+    /**
+     * Whether a line is a complete, valid line in this format.
+     * @param s           The line.
+     * @return            True if it is.
+     */
+    boolean matches(CharSequence s) {
+        return matches(s, 0, s.length());
+    }
+
+    /**
+     * Whether a line starts with a valid partial line in this format;
+     * anything beyond the truncation point is not checked.
+     * @param s           Characters containing the line.
+     * @param start       Offset of the start of the line.
+     * @param end         Offset of the end of the line.
+     * @return            True if it does.
+     */
+    boolean matchesPartial(CharSequence s, int start, int end) {
+        return end - start >= minLength && valid(s, start, minLength);
+    }
+
+    /**
+     * Whether a line starts with a valid partial line in this format.
+     * @param s           The line.
+     * @return            True if it does.
+     */
+    boolean matchesPartial(CharSequence s) {
+        return matchesPartial(s, 0, s.length());
+    }
+}
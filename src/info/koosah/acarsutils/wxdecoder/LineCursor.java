@@ -0,0 +1,126 @@
+package info.koosah.acarsutils.wxdecoder;
+
+/**
+ * Steps through the lines (or other delimited records) of a message
+ * body. Unlike String.split, nothing gets compiled or copied: each call
+ * to next() just finds the bounds of the next record, which are then
+ * available from start() and end() for use with a FixedFormat.
+ *
+ * By default records are separated by newlines, with any preceding
+ * carriage return dropped, as if split on "\r?\n". Alternately, records
+ * may be separated by a fixed delimiter string. Unlike String.split,
+ * a trailing empty record is not suppressed; it never matches a format,
+ * so decoders need not care.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+final class LineCursor {
+    private final CharSequence s;
+    private final int limit;
+    private final String delimiter;
+    private int next, start, end;
+
+    /**
+     * Constructor, for newline-separated lines.
+     * @param s           Characters to scan.
+     * @param start       Offset to start scanning at.
+     * @param end         Offset to stop scanning at.
+     */
+    LineCursor(CharSequence s, int start, int end) {
+        this(s, start, end, null);
+    }
+
+    /**
+     * Constructor, for newline-separated lines.
+     * @param s           Characters to scan.
+     */
+    LineCursor(CharSequence s) {
+        this(s, 0, s.length(), null);
+    }
+
+    /**
+     * Constructor, for records separated by a delimiter.
+     * @param s           Characters to scan.
+     * @param start       Offset to start scanning at.
+     * @param end         Offset to stop scanning at.
+     * @param delimiter   Delimiter, or null for newlines.
+     */
+    LineCursor(CharSequence s, int start, int end, String delimiter) {
+        if (start < 0 || end > s.length() || start > end)
+            throw new IllegalArgumentException("Invalid range: " + start + " to " + end);
+        if (delimiter != null && delimiter.isEmpty())
+            throw new IllegalArgumentException("Empty delimiter");
+        this.s = s;
+        this.limit = end;
+        this.delimiter = delimiter;
+        this.next = start;
+        this.start = this.end = -1;
+    }
+
+    /**
+     * Advance to the next record.
+     * @return            True if there is one, false if all are done.
+     */
+    boolean next() {
+        if (next > limit)
+            return false;
+        start = next;
+        int i = delimiter == null ? newline() : delimited();
+        if (i < 0) {
+            end = limit;
+            next = limit + 1;
+        } else {
+            next = i + (delimiter == null ? 1 : delimiter.length());
+            end = delimiter == null && i > start && s.charAt(i - 1) == '\r' ? i - 1 : i;
+        }
+        return true;
+    }
+
+    /* find the next newline, or -1 */
+    private int newline() {
+        for (int i=start; i<limit; i++)
+            if (s.charAt(i) == '\n')
+                return i;
+        return -1;
+    }
+
+    /* find the next delimiter, or -1 */
+    private int delimited() {
+        int n = delimiter.length();
+        char first = delimiter.charAt(0);
+        outer:
+        for (int i=start; i<=limit-n; i++) {
+            if (s.charAt(i) != first)
+                continue;
+            for (int j=1; j<n; j++)
+                if (s.charAt(i + j) != delimiter.charAt(j))
+                    continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the start of the current record.
+     * @return            Offset of its first character.
+     */
+    int start() {
+        return start;
+    }
+
+    /**
+     * Get the end of the current record.
+     * @return            Offset just past its last character.
+     */
+    int end() {
+        return end;
+    }
+
+    /**
+     * Get the length of the current record.
+     * @return            Length.
+     */
+    int length() {
+        return end - start;
+    }
+}
@@ -0,0 +1,247 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.util.Arrays;
+import java.util.Date;
+import info.koosah.acarsutils.AcarsObservation;
+
+/**
+ * A batch of weather observations, stored compactly. Rather than one
+ * object per observation (plus a boxed object per field), each field is
+ * kept in its own array of primitives: latitude and longitude in whole
+ * microdegrees, altitude in feet, temperature in tenths of a degree,
+ * wind direction and speed as shorts, and the observation time in
+ * milliseconds since the epoch. A bit mask records which of the optional
+ * fields are present. That comes to 27 bytes per observation.
+ *
+ * A batch is an ObservationSink, so decoders can fill one directly.
+ * Batches grow as needed and may be cleared and reused. They are not
+ * thread-safe.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class ObservationBatch implements ObservationSink {
+    /* Bits in the presence mask. */
+    static final byte HAS_TEMPERATURE = 1;
+    static final byte HAS_WIND_DIRECTION = 2;
+    static final byte HAS_WIND_SPEED = 4;
+
+    /* Scale factors for fixed-point values. */
+    static final double MICRO = 1000000.0;
+    static final float TENTHS = 10.0f;
+
+    private long[] observed;
+    private int[] latitude, longitude, altitude;
+    private short[] temperature, windDirection, windSpeed;
+    private byte[] present;
+    private int size;
+
+    /**
+     * Constructor.
+     * @param capacity    Number of observations to allocate space for
+     *                    initially.
+     */
+    public ObservationBatch(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        observed = new long[capacity];
+        latitude = new int[capacity];
+        longitude = new int[capacity];
+        altitude = new int[capacity];
+        temperature = new short[capacity];
+        windDirection = new short[capacity];
+        windSpeed = new short[capacity];
+        present = new byte[capacity];
+        size = 0;
+    }
+
+    /**
+     * Constructor, with a small default capacity.
+     */
+    public ObservationBatch() {
+        this(16);
+    }
+
+    private void grow() {
+        int capacity = observed.length * 2;
+        observed = Arrays.copyOf(observed, capacity);
+        latitude = Arrays.copyOf(latitude, capacity);
+        longitude = Arrays.copyOf(longitude, capacity);
+        altitude = Arrays.copyOf(altitude, capacity);
+        temperature = Arrays.copyOf(temperature, capacity);
+        windDirection = Arrays.copyOf(windDirection, capacity);
+        windSpeed = Arrays.copyOf(windSpeed, capacity);
+        present = Arrays.copyOf(present, capacity);
+    }
+
+    /* Largest temperature magnitude that fits in a short as tenths. */
+    static final float MAX_TEMPERATURE = Short.MAX_VALUE / TENTHS;
+
+    /* check values the same way AcarsObservation does, and that they fit
+       in the space we store them in */
+    static void validate(double latitude, double longitude, float temperature,
+            int windDirection, int windSpeed) {
+        if (!(latitude >= -90.0 && latitude <= 90.0))
+            throw new IllegalArgumentException("Invalid latitude: " + latitude);
+        if (!(longitude >= -180.0 && longitude <= 180.0))
+            throw new IllegalArgumentException("Invalid longitude: " + longitude);
+        if (!Float.isNaN(temperature) && !(Math.abs(temperature) <= MAX_TEMPERATURE))
+            throw new IllegalArgumentException("Invalid temperature: " + temperature);
+        if (windDirection != MISSING && (windDirection > 360 || windDirection < 0))
+            throw new IllegalArgumentException("Invalid wind direction: " + windDirection);
+        if (windSpeed != MISSING && (windSpeed > Short.MAX_VALUE || windSpeed < 0))
+            throw new IllegalArgumentException("Invalid wind speed: " + windSpeed);
+    }
+
+    /**
+     * Add an observation. Values are checked the same way AcarsObservation
+     * checks them, and must fit in the space they are stored in (so the
+     * temperature must be finite, and the wind speed no more than 32767
+     * knots); latitude and longitude are rounded to the nearest microdegree
+     * and temperature to the nearest tenth of a degree.
+     * @param observed    Time observed, in milliseconds since the epoch.
+     * @param latitude    Latitude.
+     * @param longitude   Longitude.
+     * @param altitude    Altitude in feet.
+     * @param temperature Temperature in degrees Celsius, or NaN.
+     * @param windDirection Wind direction in compass degrees, or MISSING.
+     * @param windSpeed   Wind speed in knots, or MISSING.
+     * @throws IllegalArgumentException If a value is out of range.
+     */
+    public void observe(long observed, double latitude, double longitude,
+            int altitude, float temperature, int windDirection, int windSpeed) {
+        validate(latitude, longitude, temperature, windDirection, windSpeed);
+        if (size == this.observed.length)
+            grow();
+        int i = size++;
+        this.observed[i] = observed;
+        this.latitude[i] = (int) Math.round(latitude * MICRO);
+        this.longitude[i] = (int) Math.round(longitude * MICRO);
+        this.altitude[i] = altitude;
+        byte mask = 0;
+        if (!Float.isNaN(temperature)) {
+            this.temperature[i] = (short) Math.round(temperature * TENTHS);
+            mask |= HAS_TEMPERATURE;
+        }
+        if (windDirection != MISSING) {
+            this.windDirection[i] = (short) windDirection;
+            mask |= HAS_WIND_DIRECTION;
+        }
+        if (windSpeed != MISSING) {
+            this.windSpeed[i] = (short) windSpeed;
+            mask |= HAS_WIND_SPEED;
+        }
+        present[i] = mask;
+    }
+
+    /**
+     * Get the number of observations in this batch.
+     * @return            Count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all observations, keeping the space allocated for them.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    private int check(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return index;
+    }
+
+    /**
+     * Get when an observation was made.
+     * @param index       Which observation.
+     * @return            Milliseconds since the epoch.
+     */
+    public long getObserved(int index) {
+        return observed[check(index)];
+    }
+
+    /**
+     * Get the latitude of an observation.
+     * @param index       Which observation.
+     * @return            Latitude.
+     */
+    public double getLatitude(int index) {
+        return latitude[check(index)] / MICRO;
+    }
+
+    /**
+     * Get the longitude of an observation.
+     * @param index       Which observation.
+     * @return            Longitude.
+     */
+    public double getLongitude(int index) {
+        return longitude[check(index)] / MICRO;
+    }
+
+    /**
+     * Get the altitude of an observation.
+     * @param index       Which observation.
+     * @return            Altitude in feet.
+     */
+    public int getAltitude(int index) {
+        return altitude[check(index)];
+    }
+
+    /**
+     * Get the temperature of an observation.
+     * @param index       Which observation.
+     * @return            Degrees Celsius, or NaN if missing.
+     */
+    public float getTemperature(int index) {
+        return (present[check(index)] & HAS_TEMPERATURE) == 0 ? Float.NaN : temperature[index] / TENTHS;
+    }
+
+    /**
+     * Get the wind direction of an observation.
+     * @param index       Which observation.
+     * @return            Compass degrees, or MISSING.
+     */
+    public int getWindDirection(int index) {
+        return (present[check(index)] & HAS_WIND_DIRECTION) == 0 ? MISSING : windDirection[index];
+    }
+
+    /**
+     * Get the wind speed of an observation.
+     * @param index       Which observation.
+     * @return            Knots, or MISSING.
+     */
+    public int getWindSpeed(int index) {
+        return (present[check(index)] & HAS_WIND_SPEED) == 0 ? MISSING : windSpeed[index];
+    }
+
+    /**
+     * Pass every observation in this batch, in order, to a sink.
+     * @param sink        Where to send the observations.
+     */
+    public void replay(ObservationSink sink) {
+        for (int i=0; i<size; i++)
+            sink.observe(getObserved(i), getLatitude(i), getLongitude(i), getAltitude(i),
+                getTemperature(i), getWindDirection(i), getWindSpeed(i));
+    }
+
+    /**
+     * Make an AcarsObservation object out of an observation.
+     * @param index       Which observation.
+     * @return            A new AcarsObservation.
+     */
+    public AcarsObservation toObservation(int index) {
+        AcarsObservation ret = new AcarsObservation(getLatitude(index),
+            getLongitude(index), getAltitude(index), new Date(getObserved(index)));
+        byte mask = present[index];
+        if ((mask & HAS_TEMPERATURE) != 0)
+            ret.setTemperature(getTemperature(index));
+        if ((mask & HAS_WIND_DIRECTION) != 0)
+            ret.setWindDirection(windDirection[index]);
+        if ((mask & HAS_WIND_SPEED) != 0)
+            ret.setWindSpeed(windSpeed[index]);
+        return ret;
+    }
+}
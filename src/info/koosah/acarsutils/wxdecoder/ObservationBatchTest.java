@@ -0,0 +1,89 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import info.koosah.acarsutils.AcarsObservation;
+import info.koosah.acarsutils.FakeAcarsMessage;
+
+/**
+ * Tests for storing observations in batches.
+ */
+public class ObservationBatchTest {
+    @Test
+    public void batchesObservations() {
+        ObservationBatch batch = new ObservationBatch(1);
+        ArrayList<AcarsObservation> expected = new ArrayList<AcarsObservation>();
+        for (FakeAcarsMessage msg : WxDecoderTest.samples().allMessages) {
+            WxDecoder dec = WxDecoderTest.decoderForName(msg.getFlightId());
+            Iterable<AcarsObservation> obs = dec.decode(msg, WxDecoderTest.OLD_YEAR);
+            assertEquals(obs != null, dec.decode(msg, WxDecoderTest.OLD_YEAR.getTime(), batch));
+            if (obs != null)
+                for (AcarsObservation o : obs)
+                    expected.add(o);
+        }
+        assertEquals(expected.size(), batch.size());
+        assertTrue(batch.size() > 1);
+        for (int i=0; i<batch.size(); i++) {
+            AcarsObservation o = expected.get(i);
+            assertEquals(o.getObserved().getTime(), batch.getObserved(i));
+            assertEquals(o.getLatitude(), batch.getLatitude(i), 0.0000005);
+            assertEquals(o.getLongitude(), batch.getLongitude(i), 0.0000005);
+            assertEquals((int) o.getAltitude(), batch.getAltitude(i));
+            if (o.getTemperature() == null)
+                assertTrue(Float.isNaN(batch.getTemperature(i)));
+            else
+                assertEquals(o.getTemperature(), batch.getTemperature(i), 0.05f);
+            assertEquals(o.getWindDirection() == null ? ObservationSink.MISSING : (int) o.getWindDirection(), batch.getWindDirection(i));
+            assertEquals(o.getWindSpeed() == null ? ObservationSink.MISSING : (int) o.getWindSpeed(), batch.getWindSpeed(i));
+        }
+
+        /* replaying a batch gives back the same batch */
+        ObservationBatch copy = new ObservationBatch();
+        batch.replay(copy);
+        assertEquals(batch.size(), copy.size());
+        for (int i=0; i<batch.size(); i++)
+            assertEquals(batch.toObservation(i).toString(), copy.toObservation(i).toString());
+
+        batch.clear();
+        assertEquals(0, batch.size());
+        try {
+            batch.getObserved(0);
+            fail("Expecting IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void rejectsWhatWouldNotFit() {
+        ObservationBatch batch = new ObservationBatch();
+        int none = ObservationSink.MISSING;
+        float[] temperatures = { Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, 3300.0f, -3300.0f };
+        for (float t : temperatures) {
+            try {
+                batch.observe(0L, 0.0, 0.0, 0, t, none, none);
+                fail("temperature accepted: " + t);
+            } catch (IllegalArgumentException e) {
+                /* expected */
+            }
+        }
+        for (int s : new int[] { 40000, -1, Integer.MAX_VALUE }) {
+            try {
+                batch.observe(0L, 0.0, 0.0, 0, Float.NaN, none, s);
+                fail("wind speed accepted: " + s);
+            } catch (IllegalArgumentException e) {
+                /* expected */
+            }
+        }
+        assertEquals(0, batch.size());
+
+        /* the extremes that do fit come back intact */
+        batch.observe(0L, 0.0, 0.0, 0, ObservationBatch.MAX_TEMPERATURE, none, Short.MAX_VALUE);
+        batch.observe(0L, 0.0, 0.0, 0, -ObservationBatch.MAX_TEMPERATURE, none, 0);
+        assertEquals(ObservationBatch.MAX_TEMPERATURE, batch.getTemperature(0), 0.05f);
+        assertEquals(Short.MAX_VALUE, batch.getWindSpeed(0));
+        assertEquals(-ObservationBatch.MAX_TEMPERATURE, batch.getTemperature(1), 0.05f);
+    }
+}
@@ -0,0 +1,172 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import info.koosah.acarsutils.AcarsObservation;
+
+/**
+ * Encodes weather observations as fixed-size binary records, for sending
+ * them between processes. Each record is RECORD_SIZE bytes:
+ *
+ *   offset  size  contents
+ *        0     8  time observed, milliseconds since the epoch
+ *        8     4  latitude, microdegrees
+ *       12     4  longitude, microdegrees
+ *       16     4  altitude, feet
+ *       20     2  temperature, tenths of a degree Celsius
+ *       22     2  wind direction, compass degrees
+ *       24     2  wind speed, knots
+ *       26     1  presence mask: 1 = temperature, 2 = wind direction,
+ *                 4 = wind speed; absent fields are written as zero
+ *       27     1  reserved, must be zero
+ *
+ * This is the same representation ObservationBatch uses in memory, so
+ * moving observations between a batch and a buffer loses nothing.
+ * Records use the byte order of the buffer they are written to (by
+ * default, big-endian); writer and reader must agree. Values are checked
+ * the same way ObservationBatch checks them before anything is written,
+ * so an observation that could not be read back as it was is rejected
+ * with an IllegalArgumentException rather than encoded.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class ObservationCodec {
+    /* not intended to be instantiated */
+    private ObservationCodec() {}
+
+    /**
+     * Size of an encoded observation, in bytes.
+     */
+    public static final int RECORD_SIZE = 28;
+
+    private static final byte ALL_FIELDS = ObservationBatch.HAS_TEMPERATURE |
+        ObservationBatch.HAS_WIND_DIRECTION | ObservationBatch.HAS_WIND_SPEED;
+
+    /* Writes each observation passed to it into a buffer. */
+    private static class Encoder implements ObservationSink {
+        private final ByteBuffer buf;
+
+        public Encoder(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        public void observe(long observed, double latitude, double longitude,
+                int altitude, float temperature, int windDirection, int windSpeed) {
+            ObservationBatch.validate(latitude, longitude, temperature, windDirection, windSpeed);
+            if (buf.remaining() < RECORD_SIZE)
+                throw new BufferOverflowException();
+            byte mask = 0;
+            short t = 0, d = 0, s = 0;
+            if (!Float.isNaN(temperature)) {
+                t = (short) Math.round(temperature * ObservationBatch.TENTHS);
+                mask |= ObservationBatch.HAS_TEMPERATURE;
+            }
+            if (windDirection != MISSING) {
+                d = (short) windDirection;
+                mask |= ObservationBatch.HAS_WIND_DIRECTION;
+            }
+            if (windSpeed != MISSING) {
+                s = (short) windSpeed;
+                mask |= ObservationBatch.HAS_WIND_SPEED;
+            }
+            buf.putLong(observed)
+                .putInt((int) Math.round(latitude * ObservationBatch.MICRO))
+                .putInt((int) Math.round(longitude * ObservationBatch.MICRO))
+                .putInt(altitude)
+                .putShort(t).putShort(d).putShort(s)
+                .put(mask).put((byte) 0);
+        }
+    }
+
+    /**
+     * Get a sink that encodes every observation passed to it into a
+     * buffer, so that a decoder can write records directly.
+     * @param buf         Buffer to write to.
+     * @return            An ObservationSink. It throws
+     *                    BufferOverflowException when the buffer fills,
+     *                    and IllegalArgumentException (writing nothing)
+     *                    when a value is out of range.
+     */
+    public static ObservationSink encoder(ByteBuffer buf) {
+        return new Encoder(buf);
+    }
+
+    /**
+     * Encode one observation.
+     * @param obs         Observation.
+     * @param buf         Buffer to write it to.
+     * @throws BufferOverflowException If there is not room for a record.
+     * @throws IllegalArgumentException If a value is out of range.
+     */
+    public static void encode(AcarsObservation obs, ByteBuffer buf) {
+        Float t = obs.getTemperature();
+        Short d = obs.getWindDirection(), s = obs.getWindSpeed();
+        new Encoder(buf).observe(obs.getObserved().getTime(), obs.getLatitude(),
+            obs.getLongitude(), obs.getAltitude(),
+            t == null ? Float.NaN : t,
+            d == null ? ObservationSink.MISSING : d,
+            s == null ? ObservationSink.MISSING : s);
+    }
+
+    /**
+     * Encode every observation in a batch.
+     * @param batch       Observations.
+     * @param buf         Buffer to write them to.
+     * @throws BufferOverflowException If there is not room for them all,
+     *                    in which case nothing is written.
+     */
+    public static void encode(ObservationBatch batch, ByteBuffer buf) {
+        if (buf.remaining() / RECORD_SIZE < batch.size())
+            throw new BufferOverflowException();
+        batch.replay(new Encoder(buf));
+    }
+
+    /* decode the record at the buffer's position */
+    private static void decodeOne(ByteBuffer buf, ObservationSink sink) {
+        long observed = buf.getLong();
+        double latitude = buf.getInt() / ObservationBatch.MICRO;
+        double longitude = buf.getInt() / ObservationBatch.MICRO;
+        int altitude = buf.getInt();
+        short t = buf.getShort(), d = buf.getShort(), s = buf.getShort();
+        byte mask = buf.get();
+        byte reserved = buf.get();
+        if ((mask & ~ALL_FIELDS) != 0 || reserved != 0)
+            throw new IllegalArgumentException("Invalid observation record");
+        sink.observe(observed, latitude, longitude, altitude,
+            (mask & ObservationBatch.HAS_TEMPERATURE) == 0 ? Float.NaN : t / ObservationBatch.TENTHS,
+            (mask & ObservationBatch.HAS_WIND_DIRECTION) == 0 ? ObservationSink.MISSING : d,
+            (mask & ObservationBatch.HAS_WIND_SPEED) == 0 ? ObservationSink.MISSING : s);
+    }
+
+    /**
+     * Decode one observation.
+     * @param buf         Buffer to read it from.
+     * @return            A new AcarsObservation.
+     * @throws BufferUnderflowException If there is not a complete record.
+     * @throws IllegalArgumentException If the record is not valid.
+     */
+    public static AcarsObservation decode(ByteBuffer buf) {
+        if (buf.remaining() < RECORD_SIZE)
+            throw new BufferUnderflowException();
+        WxDecoder.Collector c = new WxDecoder.Collector();
+        decodeOne(buf, c);
+        return c.list.get(0);
+    }
+
+    /**
+     * Decode all the complete records remaining in a buffer, passing each
+     * observation to a sink (which may be an ObservationBatch). Any
+     * trailing partial record is left in the buffer.
+     * @param buf         Buffer to read from.
+     * @param sink        Where to send the observations.
+     * @return            Number of observations decoded.
+     * @throws IllegalArgumentException If a record is not valid.
+     */
+    public static int decode(ByteBuffer buf, ObservationSink sink) {
+        int n = buf.remaining() / RECORD_SIZE;
+        for (int i=0; i<n; i++)
+            decodeOne(buf, sink);
+        return n;
+    }
+}
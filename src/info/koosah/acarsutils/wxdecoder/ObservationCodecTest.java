@@ -0,0 +1,85 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import info.koosah.acarsutils.AcarsObservation;
+
+/**
+ * Tests for encoding observations as fixed-size binary records.
+ */
+public class ObservationCodecTest {
+    @Test
+    public void encodesObservations() {
+        ObservationBatch batch = WxDecoderTest.sampleBatch();
+        int n = batch.size();
+
+        /* bulk round trip, with a partial record left over */
+        ByteBuffer buf = ByteBuffer.allocate(n * ObservationCodec.RECORD_SIZE + 5);
+        ObservationCodec.encode(batch, buf);
+        assertEquals(5, buf.remaining());
+        buf.flip();
+        buf.limit(buf.limit() + 5);
+        ObservationBatch copy = new ObservationBatch(1);
+        assertEquals(n, ObservationCodec.decode(buf, copy));
+        assertEquals(5, buf.remaining());
+        assertEquals(n, copy.size());
+        for (int i=0; i<n; i++)
+            assertEquals(batch.toObservation(i).toString(), copy.toObservation(i).toString());
+
+        /* single observations */
+        buf.clear();
+        for (int i=0; i<n; i++)
+            ObservationCodec.encode(batch.toObservation(i), buf);
+        assertEquals(n * ObservationCodec.RECORD_SIZE, buf.position());
+        buf.flip();
+        for (int i=0; i<n; i++)
+            assertEquals(batch.toObservation(i).toString(), ObservationCodec.decode(buf).toString());
+
+        /* no room means nothing written */
+        buf.clear();
+        buf.limit(ObservationCodec.RECORD_SIZE * (n - 1));
+        try {
+            ObservationCodec.encode(batch, buf);
+            fail("Expecting BufferOverflowException");
+        } catch (BufferOverflowException e) {
+            assertEquals(0, buf.position());
+        }
+
+        /* garbage is rejected */
+        buf.clear();
+        ObservationCodec.encode(batch.toObservation(0), buf);
+        buf.put(27, (byte) 1);
+        buf.flip();
+        try {
+            ObservationCodec.decode(buf);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+
+        /* values that would not survive the round trip are not written */
+        buf.clear();
+        AcarsObservation[] bad = {
+            batch.toObservation(0).setTemperature(Float.POSITIVE_INFINITY),
+            batch.toObservation(0).setTemperature(-4000.0f),
+            batch.toObservation(0).setWindSpeed((short) -1) };
+        for (AcarsObservation o : bad) {
+            try {
+                ObservationCodec.encode(o, buf);
+                fail("Expecting IllegalArgumentException: " + o);
+            } catch (IllegalArgumentException e) {
+                assertEquals(0, buf.position());
+            }
+        }
+        ObservationSink encoder = ObservationCodec.encoder(buf);
+        try {
+            encoder.observe(0L, 0.0, 0.0, 0, Float.NaN, ObservationSink.MISSING, 40000);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, buf.position());
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import info.koosah.acarsutils.AcarsObservation;
+import info.koosah.acarsutils.TextFormat;
+
+/**
+ * Writes a stream of weather observations as newline-delimited JSON (one
+ * object per line) or as CSV (with a header line). Missing temperatures
+ * and winds are written as JSON nulls or as empty CSV fields.
+ *
+ * Values are checked the same way ObservationBatch checks them, so that
+ * nothing unparseable is ever written; a bad observation causes an
+ * IllegalArgumentException and is not written.
+ *
+ * Records are formatted straight into an internal buffer, which is only
+ * written out once it gets full, when flush() is called, or when the
+ * exporter is closed; there are no per-record Strings. Output is always
+ * ASCII, so writing to a channel needs no character encoder. Exporters
+ * are also ObservationSinks, so decoders can feed them directly. They are
+ * not thread-safe.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class ObservationExporter implements ObservationSink, Closeable, Flushable {
+    /**
+     * Output formats.
+     */
+    public enum Format { NDJSON, CSV }
+
+    /* Write out the buffer once it gets this full. */
+    private static final int FLUSH_AT = 8192;
+
+    private static final String CSV_HEADER =
+        "observed,latitude,longitude,altitude,temperature,wind_direction,wind_speed\n";
+
+    private final Format format;
+    private final Writer writer;
+    private final WritableByteChannel channel;
+    private final StringBuilder buf;
+    private char[] chars;
+    private ByteBuffer bytes;
+    private long count;
+
+    private ObservationExporter(Writer writer, WritableByteChannel channel, Format format) {
+        if (format == null)
+            throw new IllegalArgumentException("Format must not be null.");
+        this.format = format;
+        this.writer = writer;
+        this.channel = channel;
+        buf = new StringBuilder(FLUSH_AT + 256);
+        count = 0;
+        if (format == Format.CSV)
+            buf.append(CSV_HEADER);
+    }
+
+    /**
+     * Constructor, for writing to a Writer.
+     * @param writer      Where to write.
+     * @param format      Output format.
+     */
+    public ObservationExporter(Writer writer, Format format) {
+        this(writer, null, format);
+        if (writer == null)
+            throw new IllegalArgumentException("Writer must not be null.");
+    }
+
+    /**
+     * Constructor, for writing to a channel.
+     * @param channel     Where to write.
+     * @param format      Output format.
+     */
+    public ObservationExporter(WritableByteChannel channel, Format format) {
+        this(null, channel, format);
+        if (channel == null)
+            throw new IllegalArgumentException("Channel must not be null.");
+    }
+
+    /**
+     * Get the number of observations exported so far.
+     * @return            Count.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /* format one record into the buffer */
+    private void append(long observed, double latitude, double longitude,
+            int altitude, float temperature, int windDirection, int windSpeed)
+            throws IOException {
+        ObservationBatch.validate(latitude, longitude, temperature, windDirection, windSpeed);
+        boolean json = format == Format.NDJSON;
+        buf.append(json ? "{\"observed\":\"" : "");
+        TextFormat.appendTimestamp(buf, observed);
+        buf.append(json ? "\",\"latitude\":" : ",");
+        TextFormat.appendFixed(buf, latitude, 6);
+        buf.append(json ? ",\"longitude\":" : ",");
+        TextFormat.appendFixed(buf, longitude, 6);
+        buf.append(json ? ",\"altitude\":" : ",").append(altitude);
+        buf.append(json ? ",\"temperature\":" : ",");
+        if (!Float.isNaN(temperature))
+            TextFormat.appendFixed(buf, temperature, 1);
+        else if (json)
+            buf.append("null");
+        buf.append(json ? ",\"wind_direction\":" : ",");
+        optional(json, windDirection);
+        buf.append(json ? ",\"wind_speed\":" : ",");
+        optional(json, windSpeed);
+        buf.append(json ? "}\n" : "\n");
+        count++;
+        if (buf.length() >= FLUSH_AT)
+            drain();
+    }
+
+    private void optional(boolean json, int value) {
+        if (value != MISSING)
+            buf.append(value);
+        else if (json)
+            buf.append("null");
+    }
+
+    /* write out whatever is in the buffer */
+    private void drain() throws IOException {
+        int length = buf.length();
+        if (length == 0)
+            return;
+        if (writer != null) {
+            if (chars == null)
+                chars = new char[buf.capacity()];
+            for (int i=0; i<length; i+=chars.length) {
+                int n = Math.min(chars.length, length - i);
+                buf.getChars(i, i + n, chars, 0);
+                writer.write(chars, 0, n);
+            }
+        } else {
+            if (bytes == null)
+                bytes = ByteBuffer.allocate(buf.capacity());
+            for (int i=0; i<length; i++) {
+                if (!bytes.hasRemaining())
+                    writeBytes();
+                bytes.put((byte) buf.charAt(i));
+            }
+            writeBytes();
+        }
+        buf.setLength(0);
+    }
+
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+        bytes.clear();
+    }
+
+    /**
+     * Export one observation.
+     * @param obs         Observation.
+     * @throws IOException If writing fails.
+     */
+    public void export(AcarsObservation obs) throws IOException {
+        Float t = obs.getTemperature();
+        Short d = obs.getWindDirection(), s = obs.getWindSpeed();
+        append(obs.getObserved().getTime(), obs.getLatitude(), obs.getLongitude(),
+            obs.getAltitude(), t == null ? Float.NaN : t,
+            d == null ? MISSING : d, s == null ? MISSING : s);
+    }
+
+    /**
+     * Export a stream of observations.
+     * @param observations Observations.
+     * @throws IOException If writing fails.
+     */
+    public void export(Iterable<AcarsObservation> observations) throws IOException {
+        for (AcarsObservation obs : observations)
+            export(obs);
+    }
+
+    /**
+     * Export every observation in a batch.
+     * @param batch       Observations.
+     * @throws IOException If writing fails.
+     */
+    public void export(ObservationBatch batch) throws IOException {
+        int n = batch.size();
+        for (int i=0; i<n; i++)
+            append(batch.getObserved(i), batch.getLatitude(i), batch.getLongitude(i),
+                batch.getAltitude(i), batch.getTemperature(i),
+                batch.getWindDirection(i), batch.getWindSpeed(i));
+    }
+
+    /**
+     * Export one observation, as passed by a decoder.
+     * @throws IllegalArgumentException If a value is out of range.
+     * @throws UncheckedIOException If writing fails.
+     */
+    public void observe(long observed, double latitude, double longitude,
+            int altitude, float temperature, int windDirection, int windSpeed) {
+        try {
+            append(observed, latitude, longitude, altitude, temperature, windDirection, windSpeed);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write out everything exported so far.
+     * @throws IOException If writing fails.
+     */
+    public void flush() throws IOException {
+        drain();
+        if (writer != null)
+            writer.flush();
+    }
+
+    /**
+     * Write out everything exported so far, then close the Writer or
+     * channel.
+     * @throws IOException If writing or closing fails.
+     */
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            if (writer != null)
+                writer.close();
+            else
+                channel.close();
+        }
+    }
+}
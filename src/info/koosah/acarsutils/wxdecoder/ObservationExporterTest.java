@@ -0,0 +1,81 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import info.koosah.acarsutils.AcarsObservation;
+
+/**
+ * Tests for exporting observations as NDJSON and CSV.
+ */
+public class ObservationExporterTest {
+    @Test
+    public void exportsObservations() throws IOException {
+        ObservationBatch batch = WxDecoderTest.sampleBatch();
+
+        /* a runt, to check missing fields */
+        ObservationBatch runt = new ObservationBatch();
+        runt.observe(WxDecoderTest.parseDate("2017-12-31T23:43:00Z").getTime(), 48.8162, -123.562,
+            35004, Float.NaN, ObservationSink.MISSING, ObservationSink.MISSING);
+        StringWriter json = new StringWriter();
+        ObservationExporter e = new ObservationExporter(json, ObservationExporter.Format.NDJSON);
+        e.export(runt);
+        e.export(runt.toObservation(0).setTemperature(-50.5f).setWindSpeed((short) 55));
+        e.flush();
+        assertEquals(
+            "{\"observed\":\"2017-12-31T23:43:00Z\",\"latitude\":48.816200,\"longitude\":-123.562000," +
+            "\"altitude\":35004,\"temperature\":null,\"wind_direction\":null,\"wind_speed\":null}\n" +
+            "{\"observed\":\"2017-12-31T23:43:00Z\",\"latitude\":48.816200,\"longitude\":-123.562000," +
+            "\"altitude\":35004,\"temperature\":-50.5,\"wind_direction\":null,\"wind_speed\":55}\n",
+            json.toString());
+        StringWriter csv = new StringWriter();
+        e = new ObservationExporter(csv, ObservationExporter.Format.CSV);
+        e.export(runt);
+        e.close();
+        assertEquals("observed,latitude,longitude,altitude,temperature,wind_direction,wind_speed\n" +
+            "2017-12-31T23:43:00Z,48.816200,-123.562000,35004,,,\n", csv.toString());
+
+        /* bad values are rejected, not written */
+        e = new ObservationExporter(new StringWriter(), ObservationExporter.Format.NDJSON);
+        double[][] bad = { { Double.NaN, 0.0, 0.0 }, { 0.0, Double.NaN, 0.0 }, { 91.0, 0.0, 0.0 },
+            { 0.0, Double.NEGATIVE_INFINITY, 0.0 }, { 0.0, 0.0, Double.POSITIVE_INFINITY } };
+        for (double[] b : bad) {
+            try {
+                e.observe(0L, b[0], b[1], 0, (float) b[2], ObservationSink.MISSING, ObservationSink.MISSING);
+                fail("bad observation accepted");
+            } catch (IllegalArgumentException ex) {
+                /* expected */
+            }
+        }
+        assertEquals(0L, e.getCount());
+
+        /* enough to need several flushes; all ways of feeding an exporter
+           must agree, as must writers and channels */
+        for (ObservationExporter.Format format : ObservationExporter.Format.values()) {
+            StringWriter w = new StringWriter();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObservationExporter toWriter = new ObservationExporter(w, format);
+            ObservationExporter toChannel = new ObservationExporter(Channels.newChannel(bytes), format);
+            ArrayList<AcarsObservation> list = new ArrayList<AcarsObservation>();
+            for (int i=0; i<batch.size(); i++)
+                list.add(batch.toObservation(i));
+            for (int i=0; i<200; i++) {
+                toWriter.export(batch);
+                batch.replay(toChannel);
+                toChannel.export(list);
+                toWriter.export(list);
+            }
+            toWriter.close();
+            toChannel.close();
+            assertEquals(400L * batch.size(), toWriter.getCount());
+            assertEquals(w.toString(), new String(bytes.toByteArray(), "US-ASCII"));
+            String[] lines = w.toString().split("\n");
+            assertEquals(400 * batch.size() + (format == ObservationExporter.Format.CSV ? 1 : 0), lines.length);
+        }
+    }
+}
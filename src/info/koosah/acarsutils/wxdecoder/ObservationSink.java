@@ -0,0 +1,39 @@
+package info.koosah.acarsutils.wxdecoder;
+
+/**
+ * Receives weather observations as they are decoded, one call per
+ * observation, with every value passed as a primitive. This lets callers
+ * that write observations straight to a store avoid building an
+ * AcarsObservation (and a list of them) for each message.
+ *
+ * Values are checked the same way ObservationBatch checks them (latitude,
+ * longitude and wind direction as AcarsObservation does, temperature and
+ * wind speed to fit in a short), and a decoder passes a message's
+ * observations only once all of them have decoded and checked cleanly, so
+ * a rejected message never leaves a partial set behind in the sink. Values
+ * are otherwise passed as decoded. The optional values may be missing from
+ * runt observations; a missing temperature is NaN and a missing wind value
+ * is MISSING.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+@FunctionalInterface
+public interface ObservationSink {
+    /**
+     * Value passed for a missing wind direction or speed.
+     */
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    /**
+     * Accept one observation.
+     * @param observed    Time observed, in milliseconds since the epoch.
+     * @param latitude    Latitude.
+     * @param longitude   Longitude.
+     * @param altitude    Altitude in feet.
+     * @param temperature Temperature in degrees Celsius, or NaN.
+     * @param windDirection Wind direction in compass degrees, or MISSING.
+     * @param windSpeed   Wind speed in knots, or MISSING.
+     */
+    public void observe(long observed, double latitude, double longitude,
+        int altitude, float temperature, int windDirection, int windSpeed);
+}
@@ -0,0 +1,161 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.time.LocalDate;
+
+/**
+ * Resolves the abbreviated timestamps found in weather observations into
+ * absolute times, given a base time near when the observation was made.
+ * Some airlines send only the time of day (HHMM or HHMMSS), which we take
+ * to be within the 24 hours ending one hour after the base time; others
+ * send the day of the month as well (DDHHMM), which we take to be
+ * yesterday, today or tomorrow.
+ *
+ * All times are UTC milliseconds since the epoch, so resolving is simple
+ * integer arithmetic. A window depends only on the base hour (or day), so
+ * each thread caches the last few it made; that way threads decoding
+ * against different base times (e.g. per-message ones in BatchDecoder) do
+ * not keep replacing each other's windows, nor share a field they all
+ * write. Windows are immutable, so they may be shared by any number of
+ * threads.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+final class TimeWindow {
+    /* not intended to be instantiated */
+    private TimeWindow() {}
+
+    static final long SECOND = 1000L;
+    static final long MINUTE = 60 * SECOND;
+    static final long HOUR = 60 * MINUTE;
+    static final long DAY = 24 * HOUR;
+
+    /* The hourly window runs from this many hours before the base hour. */
+    private static final int HOURS_BACK = 22;
+
+    /* How many windows of each kind each thread caches. */
+    private static final int CACHED = 4;
+
+    /**
+     * Parse a run of decimal digits.
+     * @param s           Characters containing the digits.
+     * @param start       Offset of the first digit.
+     * @param end         Offset just past the last digit.
+     * @return            Value.
+     * @throws NumberFormatException If there is a non-digit in the range.
+     */
+    static int digits(CharSequence s, int start, int end) {
+        int ret = 0;
+        for (int i=start; i<end; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9)
+                throw new NumberFormatException("Invalid digit in: " + s.subSequence(start, end));
+            ret = ret * 10 + d;
+        }
+        return ret;
+    }
+
+    /**
+     * A window of 24 hours, for timestamps with no date.
+     */
+    static final class Hourly {
+        private final long baseHour, first;
+        private final int firstHour;
+
+        private Hourly(long baseHour) {
+            this.baseHour = baseHour;
+            first = baseHour - HOURS_BACK * HOUR;
+            firstHour = (int) Math.floorMod(first / HOUR, 24L);
+        }
+
+        /* this thread's windows, most recently made first */
+        private static final ThreadLocal<Hourly[]> CACHE =
+            ThreadLocal.withInitial(() -> new Hourly[CACHED]);
+
+        /**
+         * Get the window for a given base time.
+         * @param baseTime    Base time, in milliseconds.
+         * @return            Window.
+         */
+        static Hourly forBase(long baseTime) {
+            long baseHour = Math.floorDiv(baseTime, HOUR) * HOUR;
+            Hourly[] cache = CACHE.get();
+            for (Hourly h : cache)
+                if (h != null && h.baseHour == baseHour)
+                    return h;
+            System.arraycopy(cache, 0, cache, 1, cache.length - 1);
+            return cache[0] = new Hourly(baseHour);
+        }
+
+        /**
+         * Resolve a time of day.
+         * @param hh          Hour.
+         * @param mm          Minute.
+         * @param ss          Second.
+         * @return            Milliseconds since the epoch.
+         * @throws IllegalArgumentException If the hour is not valid.
+         */
+        long resolve(int hh, int mm, int ss) {
+            if (hh < 0 || hh > 23)
+                throw new IllegalArgumentException("Observation not within supported window.");
+            int offset = hh - firstHour;
+            if (offset < 0)
+                offset += 24;
+            return first + offset * HOUR + mm * MINUTE + ss * SECOND;
+        }
+    }
+
+    /**
+     * A window of three days, for timestamps with a day of the month.
+     */
+    static final class Daily {
+        private final long today;
+        private final int[] days;
+
+        private Daily(long today) {
+            this.today = today;
+            long epochDay = today / DAY;
+            days = new int[] {
+                LocalDate.ofEpochDay(epochDay).getDayOfMonth(),
+                LocalDate.ofEpochDay(epochDay - 1).getDayOfMonth(),
+                LocalDate.ofEpochDay(epochDay + 1).getDayOfMonth()
+            };
+        }
+
+        /* offsets from today of the days in the days array */
+        private static final long[] OFFSETS = new long[] { 0L, -DAY, DAY };
+
+        /* this thread's windows, most recently made first */
+        private static final ThreadLocal<Daily[]> CACHE =
+            ThreadLocal.withInitial(() -> new Daily[CACHED]);
+
+        /**
+         * Get the window for a given base time.
+         * @param baseTime    Base time, in milliseconds.
+         * @return            Window.
+         */
+        static Daily forBase(long baseTime) {
+            long today = Math.floorDiv(baseTime, DAY) * DAY;
+            Daily[] cache = CACHE.get();
+            for (Daily d : cache)
+                if (d != null && d.today == today)
+                    return d;
+            System.arraycopy(cache, 0, cache, 1, cache.length - 1);
+            return cache[0] = new Daily(today);
+        }
+
+        /**
+         * Resolve a day and time.
+         * @param dd          Day of the month.
+         * @param hh          Hour.
+         * @param mm          Minute.
+         * @return            Milliseconds since the epoch.
+         * @throws IllegalArgumentException If the day is not in the window.
+         */
+        long resolve(int dd, int hh, int mm) {
+            for (int i=0; i<days.length; i++)
+                if (dd == days[i])
+                    return today + OFFSETS[i] + hh * HOUR + mm * MINUTE;
+            throw new IllegalArgumentException("Observation not within 24 hrs of base time");
+        }
+    }
+}
@@ -0,0 +1,717 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import info.koosah.acarsutils.FakeAcarsMessage;
+
+/**
+ * Generates synthetic ACARS traffic for load testing the weather decoders,
+ * so that throughput can be measured without shipping real captures.
+ * Messages are made for every supported airline, in that airline's own
+ * format (including all three FedEx variants), and come in four kinds:
+ * observations, runts (observations truncated part way through the last
+ * report, as often happens on the air), non-observation H1/DF messages,
+ * and acknowledgements.
+ *
+ * The mix of airlines and kinds is set with weights, and messages are
+ * given receipt times as if they arrived at random at a given average
+ * rate. Observation timestamps all fall within the hour before the base
+ * time, so getBaseTime() is the time to decode them against.
+ *
+ * Output is determined entirely by the seed and the settings. To avoid
+ * allocating anything per message, a pool of distinct messages of each
+ * airline and kind is made when the first message is requested, and next()
+ * chooses among them; the messages returned are therefore shared, and
+ * must not be modified. Settings may not be changed once generation has
+ * begun. This class is not thread-safe.
+ *
+ * @author David Barts <n5jrn@me.com>
+ */
+public final class TrafficGenerator {
+    /**
+     * Kinds of messages.
+     */
+    public enum Kind { OBSERVATION, RUNT, NON_OBSERVATION, ACK }
+
+    /**
+     * Codes of the airlines traffic is generated for.
+     */
+    public static final List<String> AIRLINES = Collections.unmodifiableList(Arrays.asList(
+        "AS", "WN", "NW", "FX", "DL", "AA", "AM", "F9", "AC", "RV"));
+
+    /* Default weights of the airlines and kinds of messages. */
+    private static final int[] AIRLINE_WEIGHTS = { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 };
+    private static final int[] KIND_WEIGHTS = { 60, 20, 10, 10 };
+
+    private static final String ACK_LABEL = "_\u007f";
+    private static final char NAK = '\u0015';
+    private static final String NL = "\r\n";
+    private static final String UPPER = FixedFormat.UPPER;
+    private static final String[] MONTHS = { "JAN", "FEB", "MAR", "APR",
+        "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" };
+    private static final String[] AIRPORTS = { "KSEA", "KPDX", "KSFO",
+        "KLAX", "KORD", "KDEN", "MMMX", "CYYZ", "CYVR", "KPHX" };
+
+    /* Most reports in any one message. */
+    private static final int MAX_REPORTS = 6;
+
+    private final SplittableRandom random;
+    private final int[] airlineWeights;
+    private final int[] kindWeights;
+    private double rate;
+    private long baseTime;
+    private int poolSize;
+
+    /* set up when generation begins */
+    private FakeAcarsMessage[][] pools;
+    private int[] cumulative;
+    private int total;
+    private double time;
+
+    /**
+     * Constructor.
+     * @param seed        Seed for the random numbers everything is
+     *                    derived from.
+     */
+    public TrafficGenerator(long seed) {
+        random = new SplittableRandom(seed);
+        airlineWeights = AIRLINE_WEIGHTS.clone();
+        kindWeights = KIND_WEIGHTS.clone();
+        rate = 10.0;
+        baseTime = 1514764800000L;
+        poolSize = 64;
+    }
+
+    private void mutable() {
+        if (pools != null)
+            throw new IllegalStateException("Generation has already begun.");
+    }
+
+    private static int weight(int weight) {
+        if (weight < 0)
+            throw new IllegalArgumentException("Weight must not be negative.");
+        return weight;
+    }
+
+    /**
+     * Set how often messages for an airline occur, relative to the other
+     * airlines. All airlines default to a weight of 1.
+     * @param airline     Airline code.
+     * @param weight      Weight; zero means no messages.
+     * @return            This generator.
+     * @throws IllegalArgumentException If the airline is not supported or
+     *                    the weight is negative.
+     */
+    public TrafficGenerator setWeight(String airline, int weight) {
+        mutable();
+        int i = AIRLINES.indexOf(airline);
+        if (i < 0)
+            throw new IllegalArgumentException("Unsupported airline: " + airline);
+        airlineWeights[i] = weight(weight);
+        return this;
+    }
+
+    /**
+     * Set how often a kind of message occurs, relative to the other kinds.
+     * The defaults are 60 observations, 20 runts, 10 non-observations and
+     * 10 acknowledgements.
+     * @param kind        Kind of message.
+     * @param weight      Weight; zero means no messages.
+     * @return            This generator.
+     * @throws IllegalArgumentException If the weight is negative.
+     */
+    public TrafficGenerator setWeight(Kind kind, int weight) {
+        mutable();
+        kindWeights[kind.ordinal()] = weight(weight);
+        return this;
+    }
+
+    /**
+     * Set the average rate at which messages arrive (default 10).
+     * @param perSecond   Messages per second.
+     * @return            This generator.
+     * @throws IllegalArgumentException If the rate is not positive.
+     */
+    public TrafficGenerator setRate(double perSecond) {
+        mutable();
+        if (!(perSecond > 0.0) || Double.isInfinite(perSecond))
+            throw new IllegalArgumentException("Rate must be positive.");
+        rate = perSecond;
+        return this;
+    }
+
+    /**
+     * Set the base time (default 2018-01-01T00:00:00Z). Observations are
+     * made in the hour before it, and messages arrive after it.
+     * @param baseTime    Base time, in milliseconds since the epoch.
+     * @return            This generator.
+     */
+    public TrafficGenerator setBaseTime(long baseTime) {
+        mutable();
+        this.baseTime = baseTime;
+        return this;
+    }
+
+    /**
+     * Set how many distinct messages of each airline and kind to make
+     * (default 64).
+     * @param poolSize    Number of messages.
+     * @return            This generator.
+     * @throws IllegalArgumentException If the size is not positive.
+     */
+    public TrafficGenerator setPoolSize(int poolSize) {
+        mutable();
+        if (poolSize <= 0)
+            throw new IllegalArgumentException("Pool size must be positive.");
+        this.poolSize = poolSize;
+        return this;
+    }
+
+    /**
+     * Get the base time, which observations should be decoded against.
+     * @return            Base time, in milliseconds since the epoch.
+     */
+    public long getBaseTime() {
+        return baseTime;
+    }
+
+    /**
+     * Get the time the last message returned by next() was received.
+     * @return            Time, in milliseconds since the epoch.
+     */
+    public long getTime() {
+        return baseTime + (long) time;
+    }
+
+    /**
+     * Get the next message.
+     * @return            Message, which must not be modified.
+     * @throws IllegalStateException If all weights are zero.
+     */
+    public FakeAcarsMessage next() {
+        if (pools == null)
+            begin();
+        int r = random.nextInt(total);
+        int cell = 0;
+        while (cumulative[cell] <= r)
+            cell++;
+        time -= Math.log(1.0 - random.nextDouble()) * 1000.0 / rate;
+        FakeAcarsMessage[] pool = pools[cell];
+        return pool[random.nextInt(pool.length)];
+    }
+
+    /* make the pools and the table for choosing among them */
+    private void begin() {
+        Kind[] kinds = Kind.values();
+        cumulative = new int[AIRLINES.size() * kinds.length];
+        pools = new FakeAcarsMessage[cumulative.length][];
+        total = 0;
+        for (int a=0; a<AIRLINES.size(); a++) {
+            for (Kind k : kinds) {
+                int cell = a * kinds.length + k.ordinal();
+                int weight = airlineWeights[a] * kindWeights[k.ordinal()];
+                total += weight;
+                cumulative[cell] = total;
+                if (weight == 0)
+                    continue;
+                pools[cell] = new FakeAcarsMessage[poolSize];
+                for (int i=0; i<poolSize; i++)
+                    pools[cell][i] = make(AIRLINES.get(a), k);
+            }
+        }
+        if (total == 0) {
+            pools = null;
+            throw new IllegalStateException("All weights are zero.");
+        }
+        time = 0.0;
+    }
+
+    /* A flight track: a short run of reports, one a minute or so. */
+    private final class Track {
+        final int n;
+        final double[] lat = new double[MAX_REPORTS], lon = new double[MAX_REPORTS];
+        final int[] alt = new int[MAX_REPORTS], temp = new int[MAX_REPORTS];
+        final int[] dir = new int[MAX_REPORTS], speed = new int[MAX_REPORTS];
+        final long[] when = new long[MAX_REPORTS];
+
+        Track(int n) {
+            this.n = n;
+            double la = 25.0 + random.nextDouble() * 24.0;
+            double lo = -124.0 + random.nextDouble() * 54.0;
+            int al = 1000 + random.nextInt(38000);
+            int climb = random.nextInt(2001) - 1000;
+            int d = random.nextInt(360), s = random.nextInt(150);
+            long t = baseTime - (n + 1) * TimeWindow.MINUTE
+                - random.nextInt(50 - 2 * MAX_REPORTS) * TimeWindow.MINUTE;
+            for (int i=0; i<n; i++) {
+                lat[i] = la;
+                lon[i] = lo;
+                alt[i] = al;
+                /* tenths of a degree; roughly the standard lapse rate */
+                temp[i] = Math.max(-650, 150 - al * 2 / 100 + random.nextInt(61) - 30);
+                dir[i] = d;
+                speed[i] = s;
+                when[i] = t;
+                la += random.nextDouble() * 0.06 - 0.03;
+                lo += random.nextDouble() * 0.06 - 0.03;
+                al = Math.max(0, Math.min(45000, al + climb));
+                d = Math.floorMod(d + random.nextInt(21) - 10, 360);
+                s = Math.max(0, s + random.nextInt(9) - 4);
+                t += TimeWindow.MINUTE + random.nextInt(30) * TimeWindow.SECOND;
+            }
+        }
+    }
+
+    /* make a message of a given airline and kind */
+    private FakeAcarsMessage make(String airline, Kind kind) {
+        FakeAcarsMessage m = new FakeAcarsMessage()
+            .setRegistration(registration(airline))
+            .setFlightId(airline + digits(4))
+            .setMode('2')
+            .setBlockId((char) ('0' + random.nextInt(10)));
+        if (kind == Kind.ACK) {
+            return m.setLabel(ACK_LABEL)
+                .setAcknowledge(UPPER.charAt(random.nextInt(UPPER.length())))
+                .setMessageId("S" + digits(2) + "A")
+                .setMessage("");
+        }
+        m.setAcknowledge(NAK).setMessageId("D" + digits(2) + letters(1));
+        if (kind == Kind.NON_OBSERVATION)
+            return m.setLabel("H1").setSource("DF").setMessage(nonObservation());
+
+        StringBuilder sb = new StringBuilder();
+        int last;
+        switch (airline) {
+        case "AS":
+            last = as(sb, new Track(3));
+            break;
+        case "WN":
+            last = wn(sb, new Track(3));
+            break;
+        case "NW":
+            last = nw(sb, new Track(3));
+            break;
+        case "FX":
+            last = fx(sb, new Track(4), m.getRegistration());
+            break;
+        case "DL":
+            last = dl(sb, new Track(2));
+            break;
+        case "AA":
+            last = aa(sb, new Track(4));
+            break;
+        case "AM":
+            last = am(sb, new Track(5));
+            break;
+        case "F9":
+            last = f9(sb, new Track(1));
+            break;
+        default:
+            last = ac(sb, new Track(1), m.getFlightId());
+            break;
+        }
+
+        /* runts are cut off somewhere in their last report */
+        if (kind == Kind.RUNT)
+            sb.setLength(last + 1 + random.nextInt(sb.length() - last - 1));
+
+        switch (airline) {
+        case "AM":
+            return m.setLabel("H2").setMessage(sb.toString());
+        case "F9":
+            return m.setLabel("21").setMessage(sb.toString());
+        case "AC":
+        case "RV":
+            return m.setLabel("4T").setMessage(sb.toString());
+        default:
+            return m.setLabel("H1").setSource("DF").setMessage(sb.toString());
+        }
+    }
+
+    /* The formatters below each append an observation message, and
+       return the offset at which its last report starts. */
+
+    private int as(StringBuilder sb, Track t) {
+        int last = 0;
+        sb.append("#DFB.2.").append(digits(3)).append('.').append(digits(3)).append(".CR#");
+        for (int i=0; i<t.n; i++) {
+            sb.append(NL);
+            last = sb.length();
+            latitude(sb, t.lat[i]);
+            fixed(sb, Math.abs(t.lat[i]), 2, 4);
+            sb.append('.');
+            longitude(sb, t.lon[i]);
+            fixed(sb, Math.abs(t.lon[i]), 3, 4);
+            sb.append('.');
+            ddhhmm(sb, t.when[i]);
+            sb.append(".#");
+            zero(sb, t.alt[i], 5);
+            sb.append('.');
+            tenths(sb, t.temp[i]);
+            sb.append('.');
+            zero(sb, t.dir[i], 3);
+            sb.append('.');
+            zero(sb, t.speed[i], 3);
+            sb.append('.').append(letters(2)).append('#');
+        }
+        return last;
+    }
+
+    private int wn(StringBuilder sb, Track t) {
+        int last = 0;
+        sb.append("#DFB").append(digits(2)).append(".8,").append(digits(3)).append(',')
+            .append(digits(3)).append(",TO,").append(digits(5)).append(",1,");
+        for (int i=0; i<t.n; i++) {
+            sb.append(NL);
+            last = sb.length();
+            latitude(sb, t.lat[i]);
+            fixed(sb, Math.abs(t.lat[i]) * 100.0, 4, 1);
+            sb.append(',');
+            longitude(sb, t.lon[i]);
+            fixed(sb, Math.abs(t.lon[i]) * 100.0, 5, 1);
+            sb.append(',');
+            ddhhmm(sb, t.when[i]);
+            sb.append(',');
+            zero(sb, t.alt[i], 5);
+            sb.append(',');
+            tenths(sb, t.temp[i]);
+            sb.append(',');
+            zero(sb, t.dir[i], 3);
+            sb.append(',');
+            zero(sb, t.speed[i], 3);
+            sb.append(',').append(letters(2)).append(',').append(digits(5)).append(",1,");
+        }
+        return last;
+    }
+
+    private int nw(StringBuilder sb, Track t) {
+        int last = 0;
+        sb.append("#DFB*WXR");
+        for (int i=0; i<t.n; i++) {
+            if (i > 0)
+                sb.append(NL);
+            last = sb.length();
+            thousandths(sb, t, i, 5, 6);
+            hhmm(sb, t.when[i]);
+            zero(sb, t.alt[i] / 100, 3);
+            degrees(sb, t.temp[i], "+", "-");
+            sb.append(digits(1));
+            zero(sb, t.dir[i], 3);
+            zero(sb, t.speed[i], 3);
+            sb.append(digits(2));
+        }
+        return last;
+    }
+
+    private int fx(StringBuilder sb, Track t, String registration) {
+        int last = 0;
+        int variant = random.nextInt(3);
+        if (variant == 0) {
+            LocalDate date = LocalDate.ofEpochDay(Math.floorDiv(baseTime, TimeWindow.DAY));
+            sb.append("#DFBR12/").append(registration, 1, registration.length());
+            zero(sb, date.getDayOfMonth(), 2);
+            sb.append(MONTHS[date.getMonthValue() - 1]).append(digits(9))
+                .append('-').append(digits(9));
+        } else {
+            sb.append("#DFB5WT").append(digits(13)).append('-').append(digits(21));
+        }
+        for (int i=0; i<t.n; i++) {
+            sb.append(NL);
+            last = sb.length();
+            switch (variant) {
+            case 0:
+                sb.append('/');
+                hhmmss(sb, t.when[i]);
+                hundredths(sb, t, i);
+                zero(sb, t.alt[i], 5);
+                break;
+            case 1:
+                hhmmss(sb, t.when[i]);
+                signed(sb, Math.round(t.lat[i] * 10000.0), 7);
+                signed(sb, Math.round(t.lon[i] * 10000.0), 8);
+                sb.append(digits(1));
+                zero(sb, t.alt[i], 5);
+                break;
+            default:
+                hhmmss(sb, t.when[i]);
+                hundredths(sb, t, i);
+                sb.append(digits(1));
+                zero(sb, t.alt[i], 5);
+                break;
+            }
+            degrees(sb, t.temp[i], "+", "-");
+            sb.append(digits(1));
+            zero(sb, t.dir[i], 3);
+            zero(sb, t.speed[i], 3);
+            sb.append(digits(1));
+        }
+        return last;
+    }
+
+    private int dl(StringBuilder sb, Track t) {
+        int last = 0;
+        sb.append("#DFB");
+        for (int i=0; i<t.n; i++) {
+            sb.append(NL);
+            last = sb.length();
+            thousandths(sb, t, i, 5, 6);
+            hhmm(sb, t.when[i]);
+            zero(sb, t.alt[i] / 10, 4);
+            degrees(sb, t.temp[i], "P", "M");
+            sb.append(digits(1));
+            zero(sb, t.dir[i], 3);
+            zero(sb, t.speed[i], 3);
+            sb.append(digits(1)).append("XXXX").append(digits(2)).append("::")
+                .append(letters(4)).append('(');
+        }
+        return last;
+    }
+
+    private int aa(StringBuilder sb, Track t) {
+        StringBuilder obs = new StringBuilder();
+        obs.append("#DFBA3").append(letters(1)).append(digits(1));
+        ddhhmm(obs, t.when[0]);
+        obs.append(airport(), 1, 4).append(' ').append(airport(), 1, 4).append(' ');
+        int last = 0;
+        for (int i=0; i<t.n; i++) {
+            last = obs.length();
+            thousandths(obs, t, i, 5, 6);
+            zero(obs, t.alt[i] / 10, 4);
+            degrees(obs, t.temp[i], "P", "M");
+            obs.append(digits(1));
+            zero(obs, t.dir[i], 3);
+            zero(obs, t.speed[i], 3);
+            obs.append(letters(1)).append(digits(4));
+        }
+        obs.append('A').append(digits(4));
+
+        /* American's messages come wrapped at 70 characters */
+        int wrapped = 0;
+        for (int i=0; i<obs.length(); i+=70) {
+            if (i > 0)
+                sb.append(NL);
+            if (i <= last)
+                wrapped = sb.length() + last - i;
+            sb.append(obs, i, Math.min(obs.length(), i + 70));
+        }
+        return wrapped;
+    }
+
+    private int am(StringBuilder sb, Track t) {
+        int last = 0;
+        sb.append(digits(2)).append(letters(1)).append(digits(2))
+            .append(airport()).append(airport());
+        for (int i=0; i<t.n; i++) {
+            if (i > 0)
+                sb.append("    Q");
+            last = sb.length();
+            thousandths(sb, t, i, 5, 6);
+            hhmm(sb, t.when[i]);
+            spaced(sb, t.alt[i] / 10, 4);
+            degrees(sb, t.temp[i], "P", "M");
+            sb.append(digits(1));
+            zero(sb, t.dir[i], 3);
+            zero(sb, t.speed[i], 3);
+            sb.append('G');
+        }
+        return last;
+    }
+
+    private int f9(StringBuilder sb, Track t) {
+        sb.append("POS");
+        latitude(sb, t.lat[0]);
+        long lat = Math.round(Math.abs(t.lat[0]) * 1000.0);
+        spaced(sb, lat / 1000, 3);
+        sb.append('.');
+        zero(sb, lat % 1000, 3);
+        longitude(sb, t.lon[0]);
+        long lon = Math.round(Math.abs(t.lon[0]) * 1000.0);
+        spaced(sb, lon / 1000, 3);
+        sb.append('.');
+        zero(sb, lon % 1000, 3);
+        sb.append(',');
+        spaced(sb, t.dir[0], 4);
+        sb.append(',');
+        hhmmss(sb, t.when[0]);
+        sb.append(',').append(t.alt[0]).append(',');
+        spaced(sb, random.nextInt(100000), 5);
+        sb.append(',');
+        spaced(sb, t.speed[0], 4);
+        int temp = Math.round(t.temp[0] / 10.0f);
+        sb.append(',').append(temp < 0 ? '-' : ' ');
+        spaced(sb, Math.abs(temp), 2);
+        sb.append(',');
+        hhmmss(sb, t.when[0] - random.nextInt(4 * 3600) * TimeWindow.SECOND);
+        sb.append(',').append(airport());
+        return 0;
+    }
+
+    private int ac(StringBuilder sb, Track t, String flight) {
+        int day = LocalDate.ofEpochDay(Math.floorDiv(t.when[0], TimeWindow.DAY)).getDayOfMonth();
+        sb.append("AGFSR ").append(flight).append('/');
+        zero(sb, day, 2);
+        sb.append('/');
+        zero(sb, day, 2);
+        sb.append('/').append(airport(), 1, 4).append(airport(), 1, 4).append('/');
+        hhmm(sb, t.when[0]);
+        sb.append("Z/").append(digits(3)).append('/');
+        fixed(sb, Math.abs(t.lat[0]) * 100.0, 4, 1);
+        sb.append(t.lat[0] < 0.0 ? 'S' : 'N');
+        fixed(sb, Math.abs(t.lon[0]) * 100.0, 5, 1);
+        sb.append(t.lon[0] < 0.0 ? 'W' : 'E').append('/');
+        zero(sb, t.alt[0] / 100, 3);
+        sb.append("/      /").append(digits(4)).append('/').append(digits(4)).append('/');
+        degrees(sb, t.temp[0], "P", "M");
+        sb.append('/');
+        zero(sb, t.dir[0], 3);
+        zero(sb, t.speed[0], 3);
+        sb.append('/').append(digits(4)).append("/   /---/").append(digits(4)).append('/')
+            .append(digits(4)).append("/----/----");
+        return 0;
+    }
+
+    /* something that isn't an observation: an engine report, say */
+    private String nonObservation() {
+        StringBuilder sb = new StringBuilder("#DFB");
+        sb.append(digits(5)).append(',').append(digits(3)).append(",B737-700,")
+            .append(digits(6)).append(',').append(airport()).append(',').append(airport());
+        int lines = 2 + random.nextInt(3);
+        for (int i=0; i<lines; i++) {
+            sb.append(NL);
+            int fields = 4 + random.nextInt(6);
+            for (int j=0; j<fields; j++) {
+                if (j > 0)
+                    sb.append(',');
+                sb.append(digits(1 + random.nextInt(5)));
+                if (random.nextBoolean())
+                    sb.append('.').append(digits(1));
+            }
+        }
+        return sb.toString();
+    }
+
+    private String registration(String airline) {
+        switch (airline) {
+        case "AM":
+            return ".XA-" + letters(3);
+        case "AC":
+        case "RV":
+            return ".C-F" + letters(3);
+        default:
+            return ".N" + digits(3) + letters(2);
+        }
+    }
+
+    private String airport() {
+        return AIRPORTS[random.nextInt(AIRPORTS.length)];
+    }
+
+    private String digits(int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i=0; i<n; i++)
+            sb.append((char) ('0' + random.nextInt(10)));
+        return sb.toString();
+    }
+
+    private String letters(int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i=0; i<n; i++)
+            sb.append(UPPER.charAt(random.nextInt(UPPER.length())));
+        return sb.toString();
+    }
+
+    /* append a non-negative number, zero-padded to a given width */
+    private static void zero(StringBuilder sb, long n, int width) {
+        for (long p=10; width>1; p*=10, width--)
+            if (n < p)
+                sb.append('0');
+        sb.append(n);
+    }
+
+    /* append a non-negative number, space-padded to a given width */
+    private static void spaced(StringBuilder sb, long n, int width) {
+        for (long p=10; width>1; p*=10, width--)
+            if (n < p)
+                sb.append(' ');
+        sb.append(n);
+    }
+
+    /* append a number, with a leading minus sign if negative */
+    private static void signed(StringBuilder sb, long n, int width) {
+        if (n < 0) {
+            sb.append('-');
+            zero(sb, -n, width - 1);
+        } else {
+            zero(sb, n, width);
+        }
+    }
+
+    /* append a non-negative number with a fixed number of places */
+    private static void fixed(StringBuilder sb, double value, int digits, int places) {
+        long scale = 1;
+        for (int i=0; i<places; i++)
+            scale *= 10;
+        long n = Math.round(value * scale);
+        zero(sb, n / scale, digits);
+        sb.append('.');
+        zero(sb, n % scale, places);
+    }
+
+    private static void latitude(StringBuilder sb, double lat) {
+        sb.append(lat < 0.0 ? 'S' : 'N');
+    }
+
+    private static void longitude(StringBuilder sb, double lon) {
+        sb.append(lon < 0.0 ? 'W' : 'E');
+    }
+
+    /* position as hemisphere letters and hundredths of a degree */
+    private static void hundredths(StringBuilder sb, Track t, int i) {
+        latitude(sb, t.lat[i]);
+        zero(sb, Math.round(Math.abs(t.lat[i]) * 100.0), 4);
+        longitude(sb, t.lon[i]);
+        zero(sb, Math.round(Math.abs(t.lon[i]) * 100.0), 5);
+    }
+
+    /* position as hemisphere letters and thousandths of a degree */
+    private static void thousandths(StringBuilder sb, Track t, int i, int latWidth, int lonWidth) {
+        latitude(sb, t.lat[i]);
+        zero(sb, Math.round(Math.abs(t.lat[i]) * 1000.0), latWidth);
+        longitude(sb, t.lon[i]);
+        zero(sb, Math.round(Math.abs(t.lon[i]) * 1000.0), lonWidth);
+    }
+
+    /* temperature in tenths, as S99.9 */
+    private static void tenths(StringBuilder sb, int tenths) {
+        sb.append(tenths < 0 ? '-' : '+');
+        tenths = Math.abs(tenths);
+        zero(sb, tenths / 10, 2);
+        sb.append('.').append(tenths % 10);
+    }
+
+    /* temperature in whole degrees, with a sign character */
+    private static void degrees(StringBuilder sb, int tenths, String plus, String minus) {
+        int degrees = Math.round(tenths / 10.0f);
+        sb.append(degrees < 0 ? minus : plus);
+        zero(sb, Math.abs(degrees), 2);
+    }
+
+    private static void ddhhmm(StringBuilder sb, long millis) {
+        zero(sb, LocalDate.ofEpochDay(Math.floorDiv(millis, TimeWindow.DAY)).getDayOfMonth(), 2);
+        hhmm(sb, millis);
+    }
+
+    private static void hhmm(StringBuilder sb, long millis) {
+        long minutes = Math.floorMod(millis, TimeWindow.DAY) / TimeWindow.MINUTE;
+        zero(sb, minutes / 60, 2);
+        zero(sb, minutes % 60, 2);
+    }
+
+    private static void hhmmss(StringBuilder sb, long millis) {
+        hhmm(sb, millis);
+        zero(sb, Math.floorMod(millis, TimeWindow.MINUTE) / TimeWindow.SECOND, 2);
+    }
+}
@@ -0,0 +1,135 @@
+package info.koosah.acarsutils.wxdecoder;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import info.koosah.acarsutils.FakeAcarsMessage;
+
+/**
+ * Tests for generating synthetic traffic.
+ */
+public class TrafficGeneratorTest {
+    /* generate only one airline and kind of message */
+    private static TrafficGenerator only(String airline, TrafficGenerator.Kind kind) {
+        TrafficGenerator g = new TrafficGenerator(42L).setPoolSize(16);
+        for (String a : TrafficGenerator.AIRLINES)
+            g.setWeight(a, a.equals(airline) ? 1 : 0);
+        for (TrafficGenerator.Kind k : TrafficGenerator.Kind.values())
+            g.setWeight(k, k == kind ? 1 : 0);
+        return g;
+    }
+
+    /* count observations, checking they are plausible */
+    private static int decode(TrafficGenerator g, FakeAcarsMessage m, boolean[] found) throws Exception {
+        final long base = g.getBaseTime();
+        final int[] count = new int[1];
+        found[0] = WxDecoder.sharedForName(m.getFlightId()).decode(m, base,
+            (observed, latitude, longitude, altitude, temperature, windDirection, windSpeed) -> {
+                assertTrue(observed < base && observed >= base - TimeWindow.HOUR);
+                assertTrue(latitude >= 24.0 && latitude <= 50.0);
+                assertTrue(longitude >= -125.0 && longitude <= -69.0);
+                assertTrue(altitude >= 0 && altitude <= 45000);
+                count[0]++;
+            });
+        return count[0];
+    }
+
+    @Test
+    public void generatesEveryAirline() throws Exception {
+        boolean[] found = new boolean[1];
+        for (String airline : TrafficGenerator.AIRLINES) {
+            TrafficGenerator obs = only(airline, TrafficGenerator.Kind.OBSERVATION);
+            for (int i=0; i<200; i++) {
+                FakeAcarsMessage m = obs.next();
+                assertEquals(airline, m.getFlightId().substring(0, 2));
+                assertTrue(airline + ": " + m.getMessage(), decode(obs, m, found) > 0);
+                assertTrue(found[0]);
+                if (airline.equals("AC") || airline.equals("RV"))
+                    assertEquals(116, m.getMessage().length());
+            }
+
+            /* runts may or may not yield something, but must not break
+               anything; ones cut off after a complete report do yield */
+            TrafficGenerator runts = only(airline, TrafficGenerator.Kind.RUNT);
+            for (int i=0; i<200; i++) {
+                FakeAcarsMessage m = runts.next();
+                int n = decode(runts, m, found);
+                if ("AS WN NW FX DL".contains(airline))
+                    assertTrue(airline + ": " + m.getMessage(), found[0] && n > 0);
+            }
+
+            for (TrafficGenerator.Kind kind : new TrafficGenerator.Kind[] {
+                    TrafficGenerator.Kind.NON_OBSERVATION, TrafficGenerator.Kind.ACK }) {
+                TrafficGenerator g = only(airline, kind);
+                for (int i=0; i<200; i++) {
+                    FakeAcarsMessage m = g.next();
+                    assertEquals(0, decode(g, m, found));
+                    assertFalse(airline + ": " + m.getMessage(), found[0]);
+                    assertNull(DecoderRouter.detect(m, new java.util.Date(g.getBaseTime())));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void isRepeatable() {
+        TrafficGenerator g1 = new TrafficGenerator(1234L).setRate(100.0);
+        TrafficGenerator g2 = new TrafficGenerator(1234L).setRate(100.0);
+        TrafficGenerator g3 = new TrafficGenerator(4321L).setRate(100.0);
+        Set<String> airlines = new HashSet<String>();
+        boolean differs = false;
+        long last = g1.getBaseTime();
+        for (int i=0; i<100000; i++) {
+            FakeAcarsMessage m1 = g1.next(), m2 = g2.next(), m3 = g3.next();
+            assertEquals(m1.getMessage(), m2.getMessage());
+            assertEquals(m1.getFlightId(), m2.getFlightId());
+            assertEquals(g1.getTime(), g2.getTime());
+            assertTrue(g1.getTime() >= last);
+            last = g1.getTime();
+            differs |= !m1.getFlightId().equals(m3.getFlightId());
+            airlines.add(m1.getFlightId().substring(0, 2));
+        }
+        assertTrue(differs);
+        assertEquals(TrafficGenerator.AIRLINES.size(), airlines.size());
+
+        /* 100,000 messages at 100 per second take about 1,000 seconds */
+        long elapsed = last - g1.getBaseTime();
+        assertTrue(elapsed > 950000L && elapsed < 1050000L);
+    }
+
+    @Test
+    public void rejectsBadSettings() {
+        TrafficGenerator g = new TrafficGenerator(0L);
+        try {
+            g.setWeight("ZZ", 1);
+            fail("unknown airline accepted");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            g.setWeight(TrafficGenerator.Kind.ACK, -1);
+            fail("negative weight accepted");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            g.setRate(0.0);
+            fail("zero rate accepted");
+        } catch (IllegalArgumentException e) {
+        }
+        for (TrafficGenerator.Kind k : TrafficGenerator.Kind.values())
+            g.setWeight(k, 0);
+        try {
+            g.next();
+            fail("all-zero weights accepted");
+        } catch (IllegalStateException e) {
+        }
+        g.setWeight(TrafficGenerator.Kind.ACK, 1);
+        assertEquals("_\u007f", g.next().getLabel());
+        try {
+            g.setPoolSize(10);
+            fail("settings changed while generating");
+        } catch (IllegalStateException e) {
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package info.koosah.acarsutils.wxdecoder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.function.Supplier;
 import info.koosah.acarsutils.AcarsObservation;
 import info.koosah.acarsutils.IAcarsMessage;
 
@@ -13,8 +15,10 @@ import info.koosah.acarsutils.IAcarsMessage;
  * vary from airline to airline, so it's best to have each airline's
  * decoder be in its own class. Which is what we do.
  *
- * Derived classes must all be in this package and have names of the
- * form DecoderForXX, where XX is the 2-letter IATA code for the airline.
+ * Derived classes must all be in this package, have names of the form
+ * DecoderForXX, where XX is the 2-letter IATA code for the airline, and
+ * be registered in the table below. They must also keep no state between
+ * calls to decode, so that a single instance can be shared by all threads.
  *
  * @author David Barts <n5jrn@me.com>
  */
@@ -24,12 +28,46 @@ abstract public class WxDecoder implements Comparable<WxDecoder> {
      */
     protected WxDecoder() {}
 
-    /* for efficiency, we cache these. */
-    private static HashMap<String,Class> cache = new HashMap<String,Class>();
-
     /* All codes and flight be these lengths. */
     private static final int CODE_LENGTH = 2;
 
+    /* Airline codes are two base-36 digits. */
+    private static final int RADIX = 36;
+
+    /* Known decoders, indexed by airline code. Filled in once, when this
+       class is loaded, and never modified after, so lookups need no
+       locking. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final Supplier<WxDecoder>[] REGISTRY = (Supplier<WxDecoder>[]) new Supplier[RADIX * RADIX];
+    static {
+        register("AA", DecoderForAA::new);
+        register("AC", DecoderForAC::new);
+        register("AM", DecoderForAM::new);
+        register("AS", DecoderForAS::new);
+        register("DL", DecoderForDL::new);
+        register("F9", DecoderForF9::new);
+        register("FX", DecoderForFX::new);
+        register("NW", DecoderForNW::new);
+        register("RV", DecoderForRV::new);
+        register("WN", DecoderForWN::new);
+    }
+
+    private static void register(String code, Supplier<WxDecoder> supplier) {
+        REGISTRY[index(code.charAt(0)) * RADIX + index(code.charAt(1))] = supplier;
+    }
+
+    /* Value of an alphanumeric character as a base-36 digit, ignoring
+       case, or -1 if it is not alphanumeric. */
+    private static int index(char ch) {
+        if (ch >= '0' && ch <= '9')
+            return ch - '0';
+        if (ch >= 'A' && ch <= 'Z')
+            return ch - 'A' + 10;
+        if (ch >= 'a' && ch <= 'z')
+            return ch - 'a' + 10;
+        return -1;
+    }
+
     /**
      * The exception we throw when we fail to loop up a syntactically valid
      * airline code.
@@ -40,76 +78,192 @@ abstract public class WxDecoder implements Comparable<WxDecoder> {
         }
     }
 
+    /* One shared instance of each decoder, created when first needed. */
+    private static class Shared {
+        private static final WxDecoder[] DECODERS = new WxDecoder[REGISTRY.length];
+        static {
+            for (int i=0; i<REGISTRY.length; i++)
+                if (REGISTRY[i] != null)
+                    DECODERS[i] = REGISTRY[i].get();
+        }
+    }
+
+    /* Validate a name and get its table index. */
+    private static int lookup(String name)
+                 throws UnknownAirlineException, IllegalArgumentException {
+        // Reject bad names
+        if (name == null)
+            throw new IllegalArgumentException("Name must not be null.");
+        for (int i=0; i<name.length(); i++) {
+            if (name.charAt(i) >= 128)
+                throw new IllegalArgumentException("Name must contain only ASCII characters.");
+        }
+        if (name.length() < CODE_LENGTH)
+            throw new IllegalArgumentException("Invalid airline or flight code length.");
+
+        // Turn the airline code into a table index, rejecting bad codes.
+        int hi = index(name.charAt(0)), lo = index(name.charAt(1));
+        if (hi < 0 || lo < 0)
+            throw new IllegalArgumentException("Airline code must be alphanumeric.");
+        int ret = hi * RADIX + lo;
+        if (REGISTRY[ret] == null)
+            throw new UnknownAirlineException("Unknown airline code: " +
+                name.substring(0, CODE_LENGTH).toUpperCase());
+        return ret;
+    }
+
     /**
      * This the way to get a decoder for a given airline. The passed name
      * is either an IATA airline code or an IATA flight number (the latter
      * begin with the former).
      *
      * @param name        Airline or flight name (see above)
-     * @return            A decoder for the airline in question
+     * @return            A fresh decoder for the airline in question
      * @throws UnknownAirlineException If there is no known decoder for
      *                    the specified airline or flight.
      * @throws IllegalArgumentException If the passed name is null or syntactically invalid.
      */
     public static WxDecoder forName(String name)
                  throws UnknownAirlineException, IllegalArgumentException {
-        // Reject bad names
-        if (name == null)
-            throw new IllegalArgumentException("Name must not be null.");
-        for (int i=0; i<name.length(); i++) {
-            if (name.charAt(i) >= 128)
-                throw new IllegalArgumentException("Name must contain only ASCII characters.");
-        }
-        if (name.length() < CODE_LENGTH)
-            throw new IllegalArgumentException("Invalid airline or flight code length.");
+        return REGISTRY[lookup(name)].get();
+    }
 
-        // Canonicalize the name into an IATA airline code, rejecting
-        // bad codes.
-        String canonical = name.substring(0, CODE_LENGTH).toUpperCase();
-        for (int i=0; i<CODE_LENGTH; i++) {
-            char ch = canonical.charAt(i);
-            if (!Character.isDigit(ch) && !Character.isAlphabetic(ch))
-                throw new IllegalArgumentException("Airline code must be alphanumeric.");
-        }
+    /**
+     * Like forName, but always returns the same decoder for a given
+     * airline. Decoders keep no state between calls to decode, so one
+     * instance may safely be used by any number of threads at once.
+     *
+     * @param name        Airline or flight name (see forName)
+     * @return            The shared decoder for the airline in question
+     * @throws UnknownAirlineException If there is no known decoder for
+     *                    the specified airline or flight.
+     * @throws IllegalArgumentException If the passed name is null or syntactically invalid.
+     */
+    public static WxDecoder sharedForName(String name)
+                 throws UnknownAirlineException, IllegalArgumentException {
+        return Shared.DECODERS[lookup(name)];
+    }
 
-        // If it's cached, avoid the hard work.
-        boolean inCache = false;
-        Class retClass = null;
-        synchronized (cache) {
-            inCache = cache.containsKey(canonical);
-            if (inCache)
-                retClass = cache.get(canonical);
-        }
-        if (inCache) {
-            if (retClass == null)
-                throw new UnknownAirlineException("Unknown airline code: " + canonical);
-            else
-                return createDecoder(retClass);
+    /**
+     * Collects observations from a decoder into a list, so that callers
+     * who want AcarsObservation objects can still have them.
+     */
+    static class Collector implements ObservationSink {
+        final ArrayList<AcarsObservation> list = new ArrayList<AcarsObservation>();
+
+        public void observe(long observed, double latitude, double longitude,
+                int altitude, float temperature, int windDirection, int windSpeed) {
+            AcarsObservation obs = new AcarsObservation(latitude, longitude, altitude, new Date(observed));
+            if (!Float.isNaN(temperature))
+                obs.setTemperature(temperature);
+            if (windDirection != MISSING)
+                obs.setWindDirection((short) windDirection);
+            if (windSpeed != MISSING)
+                obs.setWindSpeed((short) windSpeed);
+            list.add(obs);
         }
+    }
 
-        // Else gotta get the class from the class loader.
-        try {
-            retClass = Class.forName(WxDecoder.class.getPackage().getName() + ".DecoderFor" + canonical);
-        } catch (ClassNotFoundException e) {
-            synchronized (cache) {
-                cache.put(canonical, null);  // remember bad ones, too
+    /**
+     * Holds the observations from one message until all of them have been
+     * decoded and checked, so that a message which turns out to be bad
+     * partway through passes nothing to the sink. One is kept per thread
+     * and reused; a nested decode (a sink that itself decodes) gets a
+     * fresh one.
+     */
+    private static final class Pending implements ObservationSink {
+        private static final int CAPACITY = 16;
+        private long[] observed = new long[CAPACITY];
+        private double[] latitude = new double[CAPACITY], longitude = new double[CAPACITY];
+        private int[] altitude = new int[CAPACITY];
+        private float[] temperature = new float[CAPACITY];
+        private int[] windDirection = new int[CAPACITY], windSpeed = new int[CAPACITY];
+        private int size;
+        private boolean busy;
+
+        public void observe(long observed, double latitude, double longitude,
+                int altitude, float temperature, int windDirection, int windSpeed) {
+            ObservationBatch.validate(latitude, longitude, temperature, windDirection, windSpeed);
+            if (size == this.observed.length) {
+                int capacity = size * 2;
+                this.observed = Arrays.copyOf(this.observed, capacity);
+                this.latitude = Arrays.copyOf(this.latitude, capacity);
+                this.longitude = Arrays.copyOf(this.longitude, capacity);
+                this.altitude = Arrays.copyOf(this.altitude, capacity);
+                this.temperature = Arrays.copyOf(this.temperature, capacity);
+                this.windDirection = Arrays.copyOf(this.windDirection, capacity);
+                this.windSpeed = Arrays.copyOf(this.windSpeed, capacity);
             }
-            throw new UnknownAirlineException("Unknown airline code: " + canonical);
+            int i = size++;
+            this.observed[i] = observed;
+            this.latitude[i] = latitude;
+            this.longitude[i] = longitude;
+            this.altitude[i] = altitude;
+            this.temperature[i] = temperature;
+            this.windDirection[i] = windDirection;
+            this.windSpeed[i] = windSpeed;
         }
-        synchronized (cache) {
-            cache.put(canonical, retClass);
+
+        void replay(ObservationSink sink) {
+            for (int i=0; i<size; i++)
+                sink.observe(observed[i], latitude[i], longitude[i], altitude[i],
+                    temperature[i], windDirection[i], windSpeed[i]);
         }
-        return createDecoder(retClass);
     }
 
-    private static WxDecoder createDecoder(Class c) {
+    private static final ThreadLocal<Pending> PENDING = ThreadLocal.withInitial(Pending::new);
+
+    /**
+     * Decode an ACARS message into zero or more weather observations,
+     * passing them to a sink. Nothing is passed to the sink unless true
+     * is returned, and nothing is passed at all if the message is
+     * rejected: either every observation in a message reaches the sink,
+     * or none do.
+     *
+     * @param message     An AcarsMessage
+     * @param baseTime    Absolute time to base any relative timestamps on,
+     *                    in milliseconds since the epoch.
+     * @param sink        Where to send the observations.
+     * @return            False if the message is not the right type for a
+     *                    weather observation, else true (even if the
+     *                    message contained no observations).
+     * @throws IllegalArgumentException If the message is rejected, e.g.
+     *                    because a timestamp cannot be resolved against
+     *                    the base time, or a value is out of range.
+     */
+    public final boolean decode(IAcarsMessage message, long baseTime, ObservationSink sink) {
+        Pending pending = PENDING.get();
+        if (pending.busy)
+            pending = new Pending();
+        pending.busy = true;
+        pending.size = 0;
         try {
-            return (WxDecoder) c.newInstance();
-        } catch (IllegalAccessException|InstantiationException|ExceptionInInitializerError e) {
-            throw new RuntimeException(e);
+            if (!decodeReports(message, baseTime, pending))
+                return false;
+            pending.replay(sink);
+            return true;
+        } finally {
+            pending.busy = false;
         }
     }
 
+    /**
+     * Decode the reports in an ACARS message, passing each one to a sink
+     * as it is decoded. Each decoder implements this; the sink holds the
+     * observations until the whole message has been decoded, so throwing
+     * an IllegalArgumentException partway through is a safe way to reject
+     * a message.
+     *
+     * @param message     An AcarsMessage
+     * @param baseTime    Absolute time to base any relative timestamps on,
+     *                    in milliseconds since the epoch.
+     * @param sink        Where to send the observations.
+     * @return            False if the message is not the right type for a
+     *                    weather observation, else true.
+     * @throws IllegalArgumentException If the message is rejected.
+     */
+    protected abstract boolean decodeReports(IAcarsMessage message, long baseTime, ObservationSink sink);
+
     /**
      * Decode an ACARS message into one or more weather observations. If the
      * message is not the right type for a weather observation, return null.
@@ -120,12 +274,14 @@ abstract public class WxDecoder implements Comparable<WxDecoder> {
      * @param baseTime    Absolute time to base any relative timestamps on.
      * @return            An Iterable<AcarsObservation>, or null
      */
-    public abstract Iterable<AcarsObservation> decode(IAcarsMessage message, Date baseTime);
+    public Iterable<AcarsObservation> decode(IAcarsMessage message, Date baseTime) {
+        Collector c = new Collector();
+        return decode(message, baseTime.getTime(), c) ? c.list : null;
+    }
 
     /**
      * Convenience method, based on current date and time.
      * @param message     An AcarsMessage
-     * @param baseTime    Absolute time to base any relative timestamps on.
      * @return            An Iterable<AcarsObservation>, or null
      */
     public Iterable<AcarsObservation> decode(IAcarsMessage message) {
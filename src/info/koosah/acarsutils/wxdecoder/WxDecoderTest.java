@@ -1,10 +1,9 @@
 package info.koosah.acarsutils.wxdecoder;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.TimeZone;
 
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -18,26 +17,22 @@ import info.koosah.acarsutils.FakeAcarsMessage;
  */
 public class WxDecoderTest {
     /* time stamps, chosen so we can exercise end-of-year rollaround */
-    private static final SimpleDateFormat UTC = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-    static {
-        UTC.setTimeZone(TimeZone.getTimeZone("GMT"));
-    }
-    private static final Date OLD_YEAR = parseDate("2017-12-31T23:58:26Z");
+    static final Date OLD_YEAR = parseDate("2017-12-31T23:58:26Z");
     private static final Date NEW_YEAR = parseDate("2018-01-01T00:08:43Z");
 
     /* messages; observations must be crafted so as to be on 31 Dec
-       near midnight */
-    private FakeAcarsMessage asObs, asNonObs, asAck;
-    private FakeAcarsMessage wnObs, wnNonObs, wnAck;
-    private FakeAcarsMessage nwObs, nwNonObs, nwAck;
-    private FakeAcarsMessage fxObsA, fxObsB, fxObsC, fxNonObs, fxAck;
-    private FakeAcarsMessage dlObs, dlNonObs, dlBadObs;
-    private FakeAcarsMessage aaObs, aaNonObs, aaAck;
-    private FakeAcarsMessage amObs1, amObs2, amBadObs, amNonObs;
-    private FakeAcarsMessage f9Obs, f9NonObs, f9Ack;
-    private FakeAcarsMessage acObs, acNonObs, rvObs, rvNonObs;
-
-    private FakeAcarsMessage[] allMessages;
+       near midnight (package-private, as the benchmarks use them too) */
+    FakeAcarsMessage asObs, asNonObs, asAck;
+    FakeAcarsMessage wnObs, wnNonObs, wnAck;
+    FakeAcarsMessage nwObs, nwNonObs, nwAck;
+    FakeAcarsMessage fxObsA, fxObsB, fxObsC, fxNonObs, fxAck;
+    FakeAcarsMessage dlObs, dlNonObs, dlBadObs;
+    FakeAcarsMessage aaObs, aaNonObs, aaAck;
+    FakeAcarsMessage amObs1, amObs2, amBadObs, amNonObs;
+    FakeAcarsMessage f9Obs, f9NonObs, f9Ack;
+    FakeAcarsMessage acObs, acNonObs, rvObs, rvNonObs;
+
+    FakeAcarsMessage[] allMessages;
 
     @Before
     public void getFreshVars() {
@@ -264,6 +259,21 @@ public class WxDecoderTest {
             f9Ack };
     }
 
+    /* a fresh set of sample messages, for other tests to use */
+    static WxDecoderTest samples() {
+        WxDecoderTest ret = new WxDecoderTest();
+        ret.getFreshVars();
+        return ret;
+    }
+
+    /* every observation in the sample messages, decoded into a batch */
+    static ObservationBatch sampleBatch() {
+        ObservationBatch ret = new ObservationBatch();
+        for (FakeAcarsMessage msg : samples().allMessages)
+            decoderForName(msg.getFlightId()).decode(msg, OLD_YEAR.getTime(), ret);
+        return ret;
+    }
+
     /* a given airline's decoder should only decode its messages */
     public void onlyGetsMine(String airline) {
         WxDecoder dec = decoderForName(airline);
@@ -388,6 +398,275 @@ public class WxDecoderTest {
         assertNotSame(dec1, dec2);
     }
 
+    @Test
+    public void sharedDecoders() throws WxDecoder.UnknownAirlineException {
+        WxDecoder dec1 = WxDecoder.sharedForName("as");
+        WxDecoder dec2 = WxDecoder.sharedForName("AS0086");
+        assertSame(dec1, dec2);
+        assertNotSame(dec1, decoderForName("AS"));
+
+        /* one instance, used from many threads, gives the same answers */
+        final WxDecoder shared = WxDecoder.sharedForName("FX");
+        final AcarsObservation expected = shared.decode(fxObsA, OLD_YEAR).iterator().next();
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+        for (int i=0; i<threads.length; i++) {
+            final Date base = i % 2 == 0 ? OLD_YEAR : NEW_YEAR;
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j=0; j<500; j++) {
+                        if (!expected.equals(shared.decode(fxObsA, base).iterator().next()))
+                            failed[0] = true;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        assertFalse(failed[0]);
+    }
+
+    @Test
+    public void rejectsBadNames() {
+        for (String code : new String[] { "AA", "AC", "AM", "AS", "DL", "F9", "FX", "NW", "RV", "WN" })
+            assertEquals(code, decoderForName(code.toLowerCase() + "123").name());
+        try {
+            WxDecoder.forName("ZZ123");
+            fail("unknown airline accepted");
+        } catch (WxDecoder.UnknownAirlineException e) {
+            assertEquals("Unknown airline code: ZZ", e.getMessage());
+        }
+        for (String bad : new String[] { null, "A", "A-1", "\u00c5S" }) {
+            try {
+                WxDecoder.forName(bad);
+                fail("bad name accepted: " + bad);
+            } catch (IllegalArgumentException|WxDecoder.UnknownAirlineException e) {
+                assertTrue(e instanceof IllegalArgumentException);
+            }
+        }
+    }
+
+    @Test
+    public void routesByFingerprint() {
+        FakeAcarsMessage[] messages = new FakeAcarsMessage[allMessages.length + 4];
+        System.arraycopy(allMessages, 0, messages, 0, allMessages.length);
+        messages[allMessages.length] = acObs;
+        messages[allMessages.length + 1] = acNonObs;
+        messages[allMessages.length + 2] = rvObs;
+        messages[allMessages.length + 3] = rvNonObs;
+        for (FakeAcarsMessage msg : messages) {
+            Iterable<AcarsObservation> expected = decoderForName(msg.getFlightId()).decode(msg, OLD_YEAR);
+            WxDecoder dec = DecoderRouter.detect(msg, OLD_YEAR);
+            if (expected == null) {
+                assertNull(msg.getFlightId(), dec);
+                assertNull(DecoderRouter.decode(msg, OLD_YEAR));
+            } else {
+                assertNotNull(msg.getFlightId(), dec);
+                assertEquals(msg.getFlightId().substring(0, 2).replace("RV", "AC"), dec.name());
+                assertEqual(expected.iterator(), dec.decode(msg, OLD_YEAR).iterator());
+                assertEqual(expected.iterator(), DecoderRouter.decode(msg, OLD_YEAR).iterator());
+            }
+        }
+
+        /* a decoder rejecting a message means no route, not an exception */
+        Date weekLater = new Date(OLD_YEAR.getTime() + 7 * TimeWindow.DAY);
+        assertNull(DecoderRouter.detect(asObs, weekLater));
+        assertNull(DecoderRouter.decode(asObs, weekLater));
+
+        /* a missing source must not cause trouble */
+        aaObs.setSource(null);
+        assertEquals("AA", DecoderRouter.detect(aaObs, OLD_YEAR).name());
+        asObs.setSource(null);
+        assertNull(DecoderRouter.detect(asObs, OLD_YEAR));
+    }
+
+    @Test
+    public void pushesToSink() {
+        for (FakeAcarsMessage msg : allMessages) {
+            WxDecoder dec = decoderForName(msg.getFlightId());
+            Iterable<AcarsObservation> expected = dec.decode(msg, OLD_YEAR);
+            final ArrayList<AcarsObservation> pushed = new ArrayList<AcarsObservation>();
+            boolean accepted = dec.decode(msg, OLD_YEAR.getTime(), new ObservationSink() {
+                public void observe(long observed, double latitude, double longitude,
+                        int altitude, float temperature, int windDirection, int windSpeed) {
+                    AcarsObservation obs = new AcarsObservation(latitude, longitude, altitude, new Date(observed));
+                    obs.setTemperature(Float.isNaN(temperature) ? null : temperature);
+                    obs.setWindDirection(windDirection == MISSING ? null : (short) windDirection);
+                    obs.setWindSpeed(windSpeed == MISSING ? null : (short) windSpeed);
+                    pushed.add(obs);
+                }
+            });
+            assertEquals(msg.getFlightId(), expected != null, accepted);
+            if (expected == null)
+                assertTrue(pushed.isEmpty());
+            else
+                assertEqual(expected.iterator(), pushed.iterator());
+        }
+    }
+
+    @Test
+    public void fixedFormats() {
+        FixedFormat format = new FixedFormat.Builder()
+            .sign("lat", "N", "S").field("lat", "99.9999").literal("/")
+            .field("lon", "S9999", 100.0).field("alt", "ZZ9")
+            .truncate()
+            .field("temp", "S99.9").sign("temp", null, "M")
+            .build();
+        FixedFormat.Field lat = format.field("lat");
+        FixedFormat.Field lon = format.field("lon");
+        FixedFormat.Field alt = format.field("alt");
+        FixedFormat.Field temp = format.field("temp");
+        assertEquals(23, format.length());
+        assertEquals(17, format.minLength());
+
+        /* validation, full and partial */
+        assertTrue(format.matches("N47.3524/-1223  5+12.5M"));
+        assertFalse(format.matches("N47.3524/-1223  5+12.5"));
+        assertFalse(format.matches("X47.3524/-1223  5+12.5M"));
+        assertFalse(format.matches("N47.3524/-1223 5 +12.5M"));
+        assertTrue(format.matchesPartial("N47.3524/-1223  5+1"));
+        assertTrue(format.matchesPartial("N47.3524/-1223  5"));
+        assertFalse(format.matchesPartial("N47.3524/-1223  "));
+        assertTrue(format.matches("xxN47.3524/-1223  5+12.5Mxx", 2, 25));
+
+        /* values must be exactly what parsing substrings would give */
+        String line = "S47.3524/-1223 15-12.5M";
+        int len = line.length();
+        assertEquals(-Double.parseDouble("47.3524"), lat.doubleValue(line, 0, len), 0.0);
+        assertEquals(Double.parseDouble("-1223") / 100.0, lon.doubleValue(line, 0, len), 0.0);
+        assertEquals(15, alt.intValue(line, 0, len));
+        assertEquals(Float.parseFloat("-12.5"), temp.floatValue(line, 0, len), 0.0f);
+        assertEquals(Float.parseFloat("-12."), temp.floatValue(line, 0, 21), 0.0f);
+        assertEquals(-12.23f, lon.floatValue(line, 0, len), 1e-6f);
+        assertFalse(temp.fits(line, 0, 21));
+        assertTrue(temp.fits(line, 0, len));
+        java.util.Random random = new java.util.Random(42L);
+        for (int i=0; i<10000; i++) {
+            String digits = String.format("%06d", random.nextInt(1000000));
+            String s = String.format("N%s.%s/+%s%3d+%s.%sP", digits.substring(0, 2),
+                digits.substring(2), digits.substring(0, 4), random.nextInt(1000),
+                digits.substring(4), digits.substring(0, 1));
+            assertTrue(s, format.matches(s));
+            assertEquals(Double.doubleToLongBits(Double.parseDouble(s.substring(1, 8))),
+                Double.doubleToLongBits(lat.doubleValue(s, 0, s.length())));
+            assertEquals(Double.doubleToLongBits(Double.parseDouble(s.substring(9, 14)) / 100.0),
+                Double.doubleToLongBits(lon.doubleValue(s, 0, s.length())));
+            assertEquals(Float.floatToIntBits(Float.parseFloat(s.substring(17, 22))),
+                Float.floatToIntBits(temp.floatValue(s, 0, s.length())));
+        }
+
+        /* negative zero survives */
+        String zero = "S00.0000/-0000  0+00.0M";
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(lat.doubleValue(zero, 0, zero.length())));
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(lon.doubleValue(zero, 0, zero.length())));
+        assertEquals(Float.floatToIntBits(-0.0f), Float.floatToIntBits(temp.floatValue(zero, 0, zero.length())));
+
+        /* bad digits are caught */
+        try {
+            alt.intValue("N47.3524/-1223   +12.5M", 0, 23);
+            fail("blank field accepted");
+        } catch (NumberFormatException e) {
+            /* expected */
+        }
+    }
+
+    private static String records(LineCursor c) {
+        StringBuilder ret = new StringBuilder();
+        while (c.next())
+            ret.append('[').append(c.start()).append(',').append(c.end()).append(']');
+        return ret.toString();
+    }
+
+    @Test
+    public void lineCursors() {
+        /* same spans String.split would give, plus any trailing empty one */
+        assertEquals("[0,3][5,8][9,9][10,13]", records(new LineCursor("abc\r\ndef\n\nghi")));
+        assertEquals("[0,3][4,4]", records(new LineCursor("abc\n")));
+        assertEquals("[0,0]", records(new LineCursor("")));
+        assertEquals("[2,3][4,6]", records(new LineCursor("xxa\nbcyy", 2, 6)));
+        assertEquals("[1,1]", records(new LineCursor("\r\n", 1, 1)));
+
+        /* delimited records */
+        assertEquals("[0,3][7,10][14,14][18,19]", records(new LineCursor("abc    def        g", 0, 19, "    ")));
+        assertEquals("[0,1][3,4]", records(new LineCursor("a,,b", 0, 4, ",,")));
+        assertEquals("[0,2]", records(new LineCursor("a,", 0, 2, ",,")));
+    }
+
+    @Test
+    public void timeWindows() {
+        /* hourly windows run from 22 hours back to 1 hour ahead */
+        TimeWindow.Hourly hours = TimeWindow.Hourly.forBase(NEW_YEAR.getTime());
+        assertSame(hours, TimeWindow.Hourly.forBase(NEW_YEAR.getTime() + 60000L));
+
+        /* alternating base times reuse their windows rather than thrashing */
+        long later = NEW_YEAR.getTime() + 5 * TimeWindow.HOUR;
+        TimeWindow.Hourly other = TimeWindow.Hourly.forBase(later);
+        assertNotSame(hours, other);
+        assertSame(hours, TimeWindow.Hourly.forBase(NEW_YEAR.getTime()));
+        assertSame(other, TimeWindow.Hourly.forBase(later));
+        TimeWindow.Daily today = TimeWindow.Daily.forBase(NEW_YEAR.getTime());
+        TimeWindow.Daily nextWeek = TimeWindow.Daily.forBase(NEW_YEAR.getTime() + 7 * TimeWindow.DAY);
+        assertSame(today, TimeWindow.Daily.forBase(NEW_YEAR.getTime()));
+        assertSame(nextWeek, TimeWindow.Daily.forBase(NEW_YEAR.getTime() + 7 * TimeWindow.DAY));
+        assertEquals(parseDate("2017-12-31T23:59:30Z").getTime(), hours.resolve(23, 59, 30));
+        assertEquals(parseDate("2018-01-01T01:05:00Z").getTime(), hours.resolve(1, 5, 0));
+        assertEquals(parseDate("2017-12-31T02:00:00Z").getTime(), hours.resolve(2, 0, 0));
+        try {
+            hours.resolve(24, 0, 0);
+            fail("bad hour accepted");
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+
+        /* daily windows are yesterday, today and tomorrow */
+        TimeWindow.Daily days = TimeWindow.Daily.forBase(OLD_YEAR.getTime());
+        assertEquals(parseDate("2017-12-31T23:43:00Z").getTime(), days.resolve(31, 23, 43));
+        assertEquals(parseDate("2017-12-30T12:00:00Z").getTime(), days.resolve(30, 12, 0));
+        assertEquals(parseDate("2018-01-01T00:10:00Z").getTime(), days.resolve(1, 0, 10));
+        try {
+            days.resolve(2, 0, 0);
+            fail("bad day accepted");
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+
+        assertEquals(312343, TimeWindow.digits("N48.312343.", 4, 10));
+        try {
+            TimeWindow.digits("12 4", 0, 4);
+            fail("non-digit accepted");
+        } catch (NumberFormatException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void rejectsWholeMessages() {
+        /* a bad later report means none of the earlier ones get through */
+        final int[] count = new int[1];
+        ObservationSink counter = (observed, latitude, longitude, altitude, temperature, windDirection, windSpeed) -> count[0]++;
+        WxDecoder dec = decoderForName("AS");
+        for (String[] change : new String[][] { { ".312345.", ".052345." }, { "N48.6191", "N98.6191" } }) {
+            FakeAcarsMessage bad = asObs.clone().setMessage(asObs.getMessage().replace(change[0], change[1]));
+            try {
+                dec.decode(bad, OLD_YEAR.getTime(), counter);
+                fail("bad report accepted: " + change[1]);
+            } catch (IllegalArgumentException e) {
+                /* expected */
+            }
+            assertEquals(0, count[0]);
+        }
+
+        /* and the decoder is still usable afterwards */
+        assertTrue(dec.decode(asObs, OLD_YEAR.getTime(), counter));
+        assertTrue(count[0] > 1);
+    }
+
     @Test
     public void alaska() {
         onlyGetsMine("AS");
@@ -405,6 +684,15 @@ public class WxDecoderTest {
         AcarsObservation actuallyIs = dec.decode(asObs, OLD_YEAR).iterator().next();
         assertTrue(actuallyIs.equals(shouldBe));
         assertNull(dec.decode(asNonObs));
+
+        /* a runt with a garbled decimal point is rejected, not misread */
+        String garbled = asObs.getMessage().replace("#31824.-44.2.216.046.DC#", "#31824.-44X2");
+        try {
+            dec.decode(asObs.clone().setMessage(garbled), OLD_YEAR);
+            fail("garbled decimal point accepted");
+        } catch (NumberFormatException e) {
+            /* expected */
+        }
     }
 
     @Test
@@ -624,15 +912,11 @@ public class WxDecoderTest {
         assertNull(dec.decode(rvNonObs));
     }
 
-    private static Date parseDate(String s) {
-        try {
-            return UTC.parse(s);
-        } catch (ParseException e) {
-            throw new RuntimeException(e);
-        }
+    static Date parseDate(String s) {
+        return Date.from(Instant.parse(s));
     }
 
-    private static WxDecoder decoderForName(String s) {
+    static WxDecoder decoderForName(String s) {
         try {
             return WxDecoder.forName(s);
         } catch (WxDecoder.UnknownAirlineException e) {